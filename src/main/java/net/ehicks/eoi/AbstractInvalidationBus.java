@@ -0,0 +1,87 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Node identity and the receiving side shared by InvalidationBus implementations.
+ * <br>publish() only queues keys, transports send them from their own thread with flush().
+ */
+public abstract class AbstractInvalidationBus implements InvalidationBus
+{
+    private static final Logger log = LoggerFactory.getLogger(AbstractInvalidationBus.class);
+
+    public static int maxPendingKeys = 100_000;
+
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+
+    private final Counter published = Metrics.getMetricRegistry().counter("eoi.invalidationBus.published");
+    private final Counter received = Metrics.getMetricRegistry().counter("eoi.invalidationBus.received");
+
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(Collection<CacheKey> keys)
+    {
+        if (keys.isEmpty())
+            return;
+
+        for (CacheKey key : keys)
+            pending.add(key.encode());
+    }
+
+    public void flush()
+    {
+        List<String> encodedKeys = new ArrayList<>();
+        for (String encodedKey = pending.poll(); encodedKey != null; encodedKey = pending.poll())
+            encodedKeys.add(encodedKey);
+        if (encodedKeys.isEmpty())
+            return;
+
+        try
+        {
+            send(encodedKeys);
+            published.inc(encodedKeys.size());
+        }
+        catch (Exception e)
+        {
+            if (pending.size() + encodedKeys.size() <= maxPendingKeys)
+            {
+                pending.addAll(encodedKeys);
+                log.error("Unable to publish cache invalidations, will retry: " + e.getMessage(), e);
+            }
+            else
+                log.error("Unable to publish cache invalidations, dropped " + encodedKeys.size() + " keys: " + e.getMessage(), e);
+        }
+    }
+
+    protected abstract void send(List<String> encodedKeys) throws Exception;
+
+    public void receive(String senderNodeId, String encodedKey)
+    {
+        if (nodeId.equals(senderNodeId))
+            return;
+
+        received.inc();
+        CacheKey key = CacheKey.decode(encodedKey);
+        if (key == null)
+            return;
+
+        EOICache.unset(key);
+        key.dbMap.getCacheRegion().markIncomplete();
+        QueryCache.invalidateTable(key.dbMap.tableName);
+    }
+}
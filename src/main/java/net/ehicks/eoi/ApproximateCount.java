@@ -0,0 +1,80 @@
+package net.ehicks.eoi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Row counts that may be slightly stale, from table statistics on Postgres and SQL Server, otherwise counted
+ * exactly and reused for ttlMillis.
+ */
+public class ApproximateCount
+{
+    private static final Logger log = LoggerFactory.getLogger(ApproximateCount.class);
+
+    public static long ttlMillis = 60_000;
+    public static int maxEntries = 1000;
+
+    private static final ConcurrentMap<QueryKey, long[]> counts = new ConcurrentHashMap<>();
+
+    public static long get(DBMap dbMap, String countSQL, List<Object> args, boolean unfiltered, LongSupplier exactCount)
+    {
+        if (unfiltered)
+        {
+            long estimate = getTableEstimate(dbMap);
+            if (estimate >= 0)
+                return estimate;
+        }
+
+        QueryKey key = new QueryKey(countSQL, args);
+        long[] cached = counts.get(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && now < cached[1])
+            return cached[0];
+
+        long count = exactCount.getAsLong();
+        if (counts.size() >= maxEntries)
+            counts.clear();
+        counts.put(key, new long[]{count, now + ttlMillis});
+        return count;
+    }
+
+    /**
+     * @return the statistics row count, or -1 if the dialect or table has none
+     */
+    private static long getTableEstimate(DBMap dbMap)
+    {
+        String queryString;
+        if (EOI.dialect.equals(Dialect.POSTGRES))
+            queryString = "select reltuples from pg_class where relname = ?";
+        else if (EOI.dialect.equals(Dialect.SQL_SERVER))
+            queryString = "select sum(row_count) from sys.dm_db_partition_stats where object_id = object_id(?) and index_id < 2";
+        else
+            return -1;
+
+        try
+        {
+            List<Object> rows = EOI.getPrintableResult(queryString, Collections.singletonList(dbMap.tableName)).get("resultRows");
+            if (rows.isEmpty() || ((Object[]) rows.get(0))[0] == null)
+                return -1;
+            // reltuples is -1 on Postgres 14+ until the table is first analyzed
+            return ((Number) ((Object[]) rows.get(0))[0]).longValue();
+        }
+        catch (SQLException e)
+        {
+            log.error(e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    public static void clear()
+    {
+        counts.clear();
+    }
+}
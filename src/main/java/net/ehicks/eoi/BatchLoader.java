@@ -0,0 +1,174 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Coalesces primary key lookups from many threads into one IN query per DBMap, flushed after windowMicros or at
+ * maxBatchSize.
+ */
+public class BatchLoader
+{
+    private static final Logger log = LoggerFactory.getLogger(BatchLoader.class);
+
+    public static boolean enabled = false;
+    public static long windowMicros = 500;
+    public static int maxBatchSize = 100;
+    public static int threads = 2;
+
+    private static final ConcurrentMap<DBMap, Batch> open = new ConcurrentHashMap<>();
+    private static final Counter batches;
+    private static final Counter keys;
+    private static final Histogram batchSize;
+    private static ScheduledExecutorService scheduler;
+
+    static
+    {
+        MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+        batches = metricRegistry.counter("eoi.batchLoader.batches");
+        keys = metricRegistry.counter("eoi.batchLoader.keys");
+        batchSize = metricRegistry.histogram("eoi.batchLoader.batchSize");
+    }
+
+    /**
+     * @param pk a single key value, or an Object[] of key values in DBMap.getPKFields() order
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> load(DBMap dbMap, Object pk)
+    {
+        CacheKey key = CacheKey.of(dbMap, pk);
+        while (true)
+        {
+            Batch batch = open.get(dbMap);
+            if (batch == null)
+            {
+                Batch created = new Batch(dbMap);
+                batch = open.putIfAbsent(dbMap, created);
+                if (batch == null)
+                {
+                    batch = created;
+                    getScheduler().schedule(created::flush, windowMicros, TimeUnit.MICROSECONDS);
+                }
+            }
+
+            CompletableFuture<Object> future = batch.add(key, pk);
+            if (future == null)
+                continue; // flushed in the meantime, open a new one
+
+            if (batch.isFull())
+                batch.flush();
+            return (CompletableFuture<T>) future;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler()
+    {
+        if (scheduler == null)
+            scheduler = Executors.newScheduledThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "eoi-batch-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        return scheduler;
+    }
+
+    public static synchronized void shutdown()
+    {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    private static class Batch
+    {
+        private final DBMap dbMap;
+        private final Map<CacheKey, CompletableFuture<Object>> futures = new LinkedHashMap<>();
+        private final List<Object> pks = new ArrayList<>();
+        private boolean closed;
+
+        Batch(DBMap dbMap)
+        {
+            this.dbMap = dbMap;
+        }
+
+        synchronized CompletableFuture<Object> add(CacheKey key, Object pk)
+        {
+            if (closed)
+                return null;
+
+            CompletableFuture<Object> future = futures.get(key);
+            if (future == null)
+            {
+                future = new CompletableFuture<>();
+                futures.put(key, future);
+                pks.add(pk);
+            }
+            return future;
+        }
+
+        synchronized boolean isFull()
+        {
+            return pks.size() >= maxBatchSize;
+        }
+
+        // whichever of the window timer or the caller filling the batch gets here first runs the query
+        void flush()
+        {
+            synchronized (this)
+            {
+                if (closed)
+                    return;
+                closed = true;
+            }
+            open.remove(dbMap, this);
+
+            batches.inc();
+            keys.inc(pks.size());
+            batchSize.update(pks.size());
+            try
+            {
+                // queried directly rather than through findAllByIds, which can't tell a failed query from missing rows
+                Map<CacheKey, Object> found = new HashMap<>();
+                for (int from = 0; from < pks.size(); from += EOI.inClauseChunkSize)
+                {
+                    List<Object> chunk = pks.subList(from, Math.min(from + EOI.inClauseChunkSize, pks.size()));
+                    String queryString = SQLGenerator.getSelectByIdsStatement(dbMap, chunk.size());
+                    List<Object> results = EOI.executeQuery(queryString, EOI.getPKArgs(dbMap, chunk), true);
+                    if (results == null)
+                    {
+                        // already logged by executeQuery, callers get null as they would without the loader
+                        completeWithNull();
+                        return;
+                    }
+                    for (Object object : results)
+                        found.put(CacheKey.fromObject(dbMap, object), object);
+                }
+
+                for (Map.Entry<CacheKey, CompletableFuture<Object>> entry : futures.entrySet())
+                {
+                    Object object = found.get(entry.getKey());
+                    if (object == null)
+                        EOICache.setAbsent(entry.getKey());
+                    entry.getValue().complete(object);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                log.error(e.getMessage(), e);
+                completeWithNull();
+            }
+        }
+
+        private void completeWithNull()
+        {
+            for (CompletableFuture<Object> future : futures.values())
+                future.complete(null);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package net.ehicks.eoi;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maps the values of one CacheIndexed field to the keys of the cached objects holding them. Null values are not
+ * indexed.
+ */
+class CacheIndex
+{
+    final DBMapField field;
+    final boolean sorted;
+
+    private final ConcurrentMap<Object, Set<CacheKey>> keysByValue;
+    private final ConcurrentMap<CacheKey, Object> valueByKey = new ConcurrentHashMap<>();
+
+    CacheIndex(DBMapField field, boolean sorted)
+    {
+        this.field = field;
+        this.sorted = sorted;
+        this.keysByValue = sorted ? new ConcurrentSkipListMap<>() : new ConcurrentHashMap<>();
+    }
+
+    Object getIndexedValue(Object object)
+    {
+        return CacheKey.normalize(field, field.getValue(object));
+    }
+
+    // EOI.update caches the same instance it was handed, so the old value can't be read back off the object
+    synchronized void put(CacheKey key, Object object)
+    {
+        Object value = getIndexedValue(object);
+        Object previous = value == null ? valueByKey.remove(key) : valueByKey.put(key, value);
+        if (previous != null && !previous.equals(value))
+            removeFromBucket(previous, key);
+        if (value != null)
+            keysByValue.computeIfAbsent(value, v -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    synchronized void remove(CacheKey key)
+    {
+        Object previous = valueByKey.remove(key);
+        if (previous != null)
+            removeFromBucket(previous, key);
+    }
+
+    private void removeFromBucket(Object value, CacheKey key)
+    {
+        Set<CacheKey> keys = keysByValue.get(value);
+        if (keys == null)
+            return;
+        keys.remove(key);
+        if (keys.isEmpty())
+            keysByValue.remove(value);
+    }
+
+    List<CacheKey> get(Object value)
+    {
+        Set<CacheKey> keys = keysByValue.get(CacheKey.normalize(field, value));
+        return keys == null ? Collections.emptyList() : new ArrayList<>(keys);
+    }
+
+    /**
+     * Keys in value order, from inclusive, to exclusive, either may be null for no bound.
+     */
+    @SuppressWarnings("unchecked")
+    List<CacheKey> getRange(Object from, Object to)
+    {
+        ConcurrentNavigableMap<Object, Set<CacheKey>> range = (ConcurrentNavigableMap<Object, Set<CacheKey>>) keysByValue;
+        if (from != null)
+            range = range.tailMap(CacheKey.normalize(field, from), true);
+        if (to != null)
+            range = range.headMap(CacheKey.normalize(field, to), false);
+
+        List<CacheKey> keys = new ArrayList<>();
+        for (Set<CacheKey> bucket : range.values())
+            keys.addAll(bucket);
+        return keys;
+    }
+
+    synchronized void clear()
+    {
+        keysByValue.clear();
+        valueByKey.clear();
+    }
+}
@@ -0,0 +1,17 @@
+package net.ehicks.eoi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps an in-memory index of this column, see EOI.findByIndex and EOI.findByIndexRange.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheIndexed
+{
+    /** also answer range lookups, the column's values must be Comparable */
+    boolean sorted() default false;
+}
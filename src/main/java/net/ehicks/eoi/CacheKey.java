@@ -0,0 +1,203 @@
+package net.ehicks.eoi;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Identifies a cached entity by its DBMap and primary key value.
+ */
+public final class CacheKey
+{
+    public final DBMap dbMap;
+    public final long id;
+    public final Object[] compositeId;
+    private final int hash;
+
+    private CacheKey(DBMap dbMap, long id, Object[] compositeId)
+    {
+        this.dbMap = dbMap;
+        this.id = id;
+        this.compositeId = compositeId;
+        int valueHash = compositeId == null ? Long.hashCode(id) : Arrays.hashCode(compositeId);
+        this.hash = 31 * System.identityHashCode(dbMap) + valueHash;
+    }
+
+    public static CacheKey of(DBMap dbMap, long id)
+    {
+        return new CacheKey(dbMap, id, null);
+    }
+
+    /**
+     * @param pkValue a Number for single numeric primary keys, otherwise the key value or an Object[] of key values
+     */
+    public static CacheKey of(DBMap dbMap, Object pkValue)
+    {
+        if (pkValue == null)
+            return null;
+        if (dbMap.isNumericPK() && pkValue instanceof Number)
+            return new CacheKey(dbMap, ((Number) pkValue).longValue(), null);
+        Object[] values = pkValue instanceof Object[] ? ((Object[]) pkValue).clone() : new Object[] {pkValue};
+        List<DBMapField> pkFields = dbMap.getPKFields();
+        for (int i = 0; i < values.length && i < pkFields.size(); i++)
+            values[i] = normalize(pkFields.get(i), values[i]);
+        return new CacheKey(dbMap, 0, values);
+    }
+
+    public static CacheKey fromObject(Object object)
+    {
+        return fromObject(DBMap.getDBMapByClass(object.getClass()), object);
+    }
+
+    /**
+     * @return null if the object has no primary key value yet
+     */
+    public static CacheKey fromObject(DBMap dbMap, Object object)
+    {
+        List<DBMapField> pkFields = dbMap.getPKFields();
+        if (dbMap.isNumericPK())
+        {
+            Object value = pkFields.get(0).getValue(object);
+            return value == null ? null : new CacheKey(dbMap, ((Number) value).longValue(), null);
+        }
+
+        Object[] values = new Object[pkFields.size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = normalize(pkFields.get(i), pkFields.get(i).getValue(object));
+            if (values[i] == null)
+                return null;
+        }
+        return new CacheKey(dbMap, 0, values);
+    }
+
+    public static CacheKey fromResultSet(DBMap dbMap, ResultSet resultSet) throws SQLException
+    {
+        List<DBMapField> pkFields = dbMap.getPKFields();
+        if (dbMap.isNumericPK())
+            return new CacheKey(dbMap, resultSet.getLong(pkFields.get(0).columnName), null);
+
+        Object[] values = new Object[pkFields.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = normalize(pkFields.get(i), resultSet.getObject(pkFields.get(i).columnName));
+        return new CacheKey(dbMap, 0, values);
+    }
+
+    /**
+     * Wire format for sending keys between nodes.
+     */
+    public String encode()
+    {
+        if (compositeId == null)
+            return dbMap.tableName + ":" + id;
+
+        StringBuilder encoded = new StringBuilder(dbMap.tableName).append(":");
+        for (int i = 0; i < compositeId.length; i++)
+        {
+            if (i > 0)
+                encoded.append(",");
+            Object value = compositeId[i] instanceof Date ? ((Date) compositeId[i]).getTime() : compositeId[i];
+            try
+            {
+                encoded.append(URLEncoder.encode(String.valueOf(value), "UTF-8"));
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @return null if the table is not mapped on this node
+     */
+    public static CacheKey decode(String encoded)
+    {
+        int separator = encoded.indexOf(':');
+        DBMap dbMap = DBMap.getDBMapByTableName(encoded.substring(0, separator));
+        if (dbMap == null)
+            return null;
+
+        String value = encoded.substring(separator + 1);
+        if (dbMap.isNumericPK())
+            return new CacheKey(dbMap, Long.parseLong(value), null);
+
+        List<DBMapField> pkFields = dbMap.getPKFields();
+        String[] parts = value.split(",", -1);
+        Object[] values = new Object[pkFields.size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            try
+            {
+                values[i] = parse(pkFields.get(i), URLDecoder.decode(parts[i], "UTF-8"));
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        return new CacheKey(dbMap, 0, values);
+    }
+
+    // driver and getter values can differ in type (Integer vs Long, Timestamp vs Date), so keys hold one canonical type
+    static Object normalize(DBMapField field, Object value)
+    {
+        if (value == null)
+            return null;
+        if (field.type.equals(DBMapField.LONG) && value instanceof Number)
+            return ((Number) value).longValue();
+        if (field.type.equals(DBMapField.INTEGER) && value instanceof Number)
+            return ((Number) value).intValue();
+        if (field.type.equals(DBMapField.DECIMAL) && value instanceof Number)
+            return new BigDecimal(value.toString()).stripTrailingZeros();
+        if (field.type.equals(DBMapField.TIMESTAMP) && value instanceof Date)
+            return new Date(((Date) value).getTime());
+        return value;
+    }
+
+    private static Object parse(DBMapField field, String value)
+    {
+        if (field.type.equals(DBMapField.LONG)) return Long.parseLong(value);
+        if (field.type.equals(DBMapField.INTEGER)) return Integer.parseInt(value);
+        if (field.type.equals(DBMapField.DECIMAL)) return new BigDecimal(value).stripTrailingZeros();
+        if (field.type.equals(DBMapField.TIMESTAMP)) return new Date(Long.parseLong(value));
+        if (field.type.equals(DBMapField.BOOLEAN)) return Boolean.parseBoolean(value);
+        return value;
+    }
+
+    public Object getPKValue()
+    {
+        if (compositeId == null)
+            return id;
+        return compositeId.length == 1 ? compositeId[0] : compositeId.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) return true;
+        if (!(obj instanceof CacheKey)) return false;
+        CacheKey that = (CacheKey) obj;
+        return this.dbMap == that.dbMap && this.id == that.id && Arrays.equals(this.compositeId, that.compositeId);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    public String toString()
+    {
+        if (compositeId == null)
+            return dbMap.className + ":" + id;
+        return dbMap.className + ":" + Arrays.toString(compositeId);
+    }
+}
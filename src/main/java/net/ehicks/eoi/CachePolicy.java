@@ -0,0 +1,32 @@
+package net.ehicks.eoi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Per-entity EOICache settings, read by DBMap.loadDbMaps.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachePolicy
+{
+    boolean cached() default true;
+
+    /** 0 for no limit */
+    int maxEntries() default 0;
+
+    /** 0 for no expiry */
+    long ttlSeconds() default 0;
+
+    Eviction eviction() default Eviction.LRU;
+
+    /** column that moves on every update (a last updated timestamp or version), used to validate CacheSnapshot entries */
+    String watermarkColumn() default "";
+
+    enum Eviction
+    {
+        LRU, FIFO
+    }
+}
@@ -1,34 +1,214 @@
 package net.ehicks.eoi;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warms EOICache by reading whole tables in primary key order on up to CachePreloader.threads threads, until
+ * maxCacheWeightBytes is reached.
+ */
 public class CachePreloader
 {
-    // example orderByClause for a films table: order by cinemang_rating desc, imdb_id nulls last
+    private static final Logger log = LoggerFactory.getLogger(CachePreloader.class);
+
+    public static int pageSize = 1000;
+    public static int threads = 4;
+    public static long maxCacheWeightBytes = 512L * 1024 * 1024;
+
+    private static final AtomicLong loadedWeight = new AtomicLong();
+    private static final AtomicLong activeTasks = new AtomicLong();
+    private static final Meter rows;
+
+    static
+    {
+        MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+        rows = metricRegistry.meter("eoi.preload.rows");
+        metricRegistry.register("eoi.preload.weightBytes", (Gauge<Long>) loadedWeight::get);
+        metricRegistry.register("eoi.preload.activeTasks", (Gauge<Long>) activeTasks::get);
+    }
+
+    public static long preload(DBMap dbMap)
+    {
+        return preload(Collections.singletonList(dbMap));
+    }
+
+    // tables are now read in primary key order, orderByClause is ignored
+    @Deprecated
     public static void preload(DBMap dbMap, String orderByClause)
     {
-        int i = 0;
-        int limit = 1000;
-        List result = EOI.executeQueryOneResult("select count(*) from " + dbMap.tableName, new ArrayList<>());
-        long resultSize = (Long) result.get(0);
+        preload(dbMap);
+    }
 
-        long freeRamMb = getFreeRamMb();
-        while (freeRamMb > 100 && i*limit < resultSize)
+    /**
+     * @return rows loaded
+     */
+    public static long preload(List<DBMap> dbMaps)
+    {
+        long start = System.nanoTime();
+        loadedWeight.set(0);
+        Map<DBMap, Long> epochs = new HashMap<>();
+        Set<DBMap> truncated = ConcurrentHashMap.newKeySet();
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (DBMap dbMap : dbMaps)
         {
-            int offset = i * limit;
-            EOI.executeQuery("select * from " + dbMap.tableName + " " + orderByClause + " limit 1000 offset " + offset);
-            System.out.println("Loaded into cache " + dbMap.tableName + " " + offset + " to " + (offset + limit) + ". free ram:" + freeRamMb + "MB");
-            System.out.println("--> cache now holds " + EOICache.cache.size() + " objects.");
-            freeRamMb = getFreeRamMb();
-            i++;
+            if (dbMap.getPKFields().size() != 1)
+            {
+                log.warn("Skipping preload of {}, keyset paging needs a single column primary key", dbMap.tableName);
+                continue;
+            }
+            if (!EOICache.isCached(dbMap))
+            {
+                log.warn("Skipping preload of {}, it isn't cached", dbMap.tableName);
+                continue;
+            }
+            epochs.put(dbMap, dbMap.getCacheRegion().getCompletenessEpoch());
+            tasks.addAll(getRangeTasks(dbMap, truncated));
         }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        long loaded = 0;
+        try
+        {
+            for (Future<Long> future : executor.invokeAll(tasks))
+                loaded += future.get();
+
+            // every row of a table that was read to the end is cached now, unless a write cleared the epoch meanwhile
+            for (Map.Entry<DBMap, Long> epoch : epochs.entrySet())
+                if (!truncated.contains(epoch.getKey()))
+                    epoch.getKey().getCacheRegion().markComplete(epoch.getValue());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            log.error(e.getMessage(), e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Preloaded {} rows ({} KB estimated) in {} ms, cache now holds {} objects", loaded, loadedWeight.get() / 1024, millis, EOICache.size());
+        return loaded;
+    }
+
+    // numeric keys are split into one range per thread, anything else is read as one range
+    private static List<Callable<Long>> getRangeTasks(DBMap dbMap, Set<DBMap> truncated)
+    {
+        DBMapField pkField = dbMap.getPKFields().get(0);
+        if (!dbMap.isNumericPK() || threads <= 1)
+            return Collections.singletonList(() -> loadRange(dbMap, null, null, truncated));
+
+        Object[] bounds;
+        try
+        {
+            // getPrintableResult returns raw rows, the projection parser doesn't understand min/max
+            String queryString = "select min(" + pkField.columnName + "), max(" + pkField.columnName + ") from " + dbMap.tableName;
+            bounds = (Object[]) EOI.getPrintableResult(queryString).get("resultRows").get(0);
+        }
+        catch (SQLException e)
+        {
+            log.error(e.getMessage(), e);
+            return Collections.singletonList(() -> loadRange(dbMap, null, null, truncated));
+        }
+        if (bounds[0] == null)
+            return Collections.emptyList();
+
+        long min = ((Number) bounds[0]).longValue();
+        long max = ((Number) bounds[1]).longValue();
+        long step = Math.max(pageSize, (max - min) / threads + 1);
+
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (long from = min - 1; from < max; from += step)
+        {
+            long exclusiveFrom = from;
+            long inclusiveTo = Math.min(max, from + step);
+            tasks.add(() -> loadRange(dbMap, exclusiveFrom, inclusiveTo, truncated));
+        }
+        return tasks;
+    }
+
+    /**
+     * Loads rows with exclusiveFrom &lt; pk &lt;= inclusiveTo, either bound may be null.
+     */
+    private static long loadRange(DBMap dbMap, Object exclusiveFrom, Object inclusiveTo, Set<DBMap> truncated)
+    {
+        activeTasks.incrementAndGet();
+        try
+        {
+            DBMapField pkField = dbMap.getPKFields().get(0);
+            String limitClause = SQLGenerator.getLimitClause(pageSize, 0);
+            long loaded = 0;
+            Object lastSeen = exclusiveFrom;
+            while (loadedWeight.get() < maxCacheWeightBytes && !Thread.currentThread().isInterrupted())
+            {
+                List<Object> args = new ArrayList<>();
+                String where = "";
+                if (lastSeen != null)
+                {
+                    where += " where " + pkField.columnName + " > ?";
+                    args.add(lastSeen);
+                }
+                if (inclusiveTo != null)
+                {
+                    where += (where.isEmpty() ? " where " : " and ") + pkField.columnName + " <= ?";
+                    args.add(inclusiveTo);
+                }
+
+                String queryString = "select * from " + dbMap.tableName + where + " order by " + pkField.columnName + limitClause;
+                List<Object> page = EOI.executeQuery(queryString, args);
+                if (page == null)
+                {
+                    truncated.add(dbMap);
+                    break;
+                }
+                if (page.isEmpty())
+                    break;
+
+                // executeQuery cached every row, unless the region was switched off since preload() checked
+                long weight = 0;
+                if (EOICache.isCached(dbMap))
+                    for (Object object : page)
+                        weight += EntityCodec.getEncodedSize(dbMap, object);
+                loadedWeight.addAndGet(weight);
+                rows.mark(page.size());
+                loaded += page.size();
+
+                lastSeen = pkField.getValue(page.get(page.size() - 1));
+                if (page.size() < pageSize)
+                    break;
+            }
+
+            if (loadedWeight.get() >= maxCacheWeightBytes || Thread.currentThread().isInterrupted())
+                truncated.add(dbMap);
+            if (loadedWeight.get() >= maxCacheWeightBytes)
+                log.info("Preload of {} stopped at {}, cache weight budget of {} bytes reached", dbMap.tableName, lastSeen, maxCacheWeightBytes);
+            return loaded;
+        }
+        finally
+        {
+            activeTasks.decrementAndGet();
+        }
+    }
+
+    public static long getLoadedWeight()
+    {
+        return loadedWeight.get();
     }
 
-    private static long getFreeRamMb()
+    public static void resetLoadedWeight()
     {
-        long maxMemory = Runtime.getRuntime().maxMemory() ;
-        long allocatedMemory = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
-        return (maxMemory - allocatedMemory) / 1024 / 1024;
+        loadedWeight.set(0);
     }
 }
@@ -0,0 +1,292 @@
+package net.ehicks.eoi;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * The on-heap EOICache entries of one DBMap, with its CachePolicy settings.
+ * <br>A region is complete while it holds every row of its table, anything that can drop a row clears that.
+ */
+public class CacheRegion
+{
+    public final DBMap dbMap;
+    public boolean enabled = true;
+    public int maxEntries = 0;
+    public long ttlMillis = 0;
+    public CachePolicy.Eviction eviction = CachePolicy.Eviction.LRU;
+    public String watermarkColumn = "";
+
+    public final AtomicLong evictions = new AtomicLong();
+    public final AtomicLong expirations = new AtomicLong();
+
+    private final ConcurrentMap<CacheKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<CacheKey, Long> absent = new ConcurrentHashMap<>();
+    private final AtomicLong insertions = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Map<String, CacheIndex> indexes = new LinkedHashMap<>();
+    private volatile boolean complete;
+    private long completenessEpoch;
+
+    public CacheRegion(DBMap dbMap)
+    {
+        this.dbMap = dbMap;
+    }
+
+    public void applyPolicy(CachePolicy cachePolicy)
+    {
+        enabled = cachePolicy.cached();
+        maxEntries = cachePolicy.maxEntries();
+        ttlMillis = cachePolicy.ttlSeconds() * 1000;
+        eviction = cachePolicy.eviction();
+        watermarkColumn = cachePolicy.watermarkColumn();
+    }
+
+    public void addIndex(DBMapField field, boolean sorted)
+    {
+        indexes.put(field.fieldName, new CacheIndex(field, sorted));
+    }
+
+    CacheIndex getIndex(String fieldName)
+    {
+        return indexes.get(fieldName);
+    }
+
+    Collection<CacheIndex> getIndexes()
+    {
+        return indexes.values();
+    }
+
+    /**
+     * Off-heap entries are not indexed, so a region only counts as complete while OffHeapCache is off.
+     */
+    public boolean isComplete()
+    {
+        return complete && !OffHeapCache.enabled;
+    }
+
+    public synchronized long getCompletenessEpoch()
+    {
+        return completenessEpoch;
+    }
+
+    /**
+     * @param epoch the getCompletenessEpoch() value read before the full table read started
+     */
+    public synchronized void markComplete(long epoch)
+    {
+        if (epoch == completenessEpoch)
+            complete = true;
+    }
+
+    public synchronized void markIncomplete()
+    {
+        completenessEpoch++;
+        complete = false;
+    }
+
+    private void index(CacheKey key, Object object)
+    {
+        for (CacheIndex index : indexes.values())
+            index.put(key, object);
+    }
+
+    private void unindex(CacheKey key)
+    {
+        for (CacheIndex index : indexes.values())
+            index.remove(key);
+    }
+
+    /**
+     * @return the entry, or null if absent or expired
+     */
+    Entry getEntry(CacheKey key)
+    {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+
+        if (entry.expiresAt != 0)
+        {
+            long now = System.currentTimeMillis();
+            if (now >= entry.expiresAt)
+            {
+                if (entries.remove(key, entry))
+                {
+                    expirations.incrementAndGet();
+                    unindex(key);
+                    markIncomplete();
+                }
+                return null;
+            }
+
+            entry.accesses++;
+            if (RefreshAhead.enabled)
+                RefreshAhead.onAccess(this, key, entry, now);
+        }
+
+        if (maxEntries > 0 && eviction == CachePolicy.Eviction.LRU)
+            entry.lastAccess = System.nanoTime();
+        return entry;
+    }
+
+    void remove(CacheKey key, Entry entry)
+    {
+        if (entries.remove(key, entry))
+        {
+            unindex(key);
+            markIncomplete();
+        }
+    }
+
+    void put(CacheKey key, Object object)
+    {
+        long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+        entries.put(key, new Entry(object, expiresAt, insertions.incrementAndGet()));
+        index(key, object);
+        if (maxEntries > 0 && entries.size() > maxEntries)
+            evict();
+    }
+
+    boolean isAbsent(CacheKey key)
+    {
+        Long expiresAt = absent.get(key);
+        if (expiresAt == null)
+            return false;
+        if (System.currentTimeMillis() < expiresAt)
+            return true;
+
+        absent.remove(key, expiresAt);
+        return false;
+    }
+
+    // bots can probe any number of ids, so the whole set is dropped rather than allowed to grow past the limit
+    void putAbsent(CacheKey key, long ttlMillis, int maxAbsentEntries)
+    {
+        if (absent.size() >= maxAbsentEntries)
+            absent.clear();
+        absent.put(key, System.currentTimeMillis() + ttlMillis);
+    }
+
+    void removeAbsent(CacheKey key)
+    {
+        absent.remove(key);
+    }
+
+    void clearAbsent()
+    {
+        absent.clear();
+    }
+
+    void putIfPresent(CacheKey key, Object object)
+    {
+        if (entries.containsKey(key))
+            put(key, object);
+    }
+
+    /**
+     * Completeness is kept, callers dropping a row that may still exist also call markIncomplete.
+     */
+    void remove(CacheKey key)
+    {
+        entries.remove(key);
+        unindex(key);
+    }
+
+    private void evict()
+    {
+        if (!evictionLock.tryLock())
+            return;
+        try
+        {
+            int excess = entries.size() - maxEntries;
+            if (excess <= 0)
+                return;
+
+            List<Map.Entry<CacheKey, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            if (eviction == CachePolicy.Eviction.LRU)
+                candidates.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            else
+                candidates.sort(Comparator.comparingLong(e -> e.getValue().insertion));
+
+            int toEvict = Math.min(candidates.size(), Math.max(excess, maxEntries / 10));
+            for (int i = 0; i < toEvict; i++)
+                if (entries.remove(candidates.get(i).getKey(), candidates.get(i).getValue()))
+                {
+                    evictions.incrementAndGet();
+                    unindex(candidates.get(i).getKey());
+                }
+            if (toEvict > 0)
+                markIncomplete();
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    public void forEach(BiConsumer<CacheKey, Object> consumer)
+    {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<CacheKey, Entry> entry : entries.entrySet())
+        {
+            Object object = entry.getValue().reference.get();
+            if (object != null && (entry.getValue().expiresAt == 0 || now < entry.getValue().expiresAt))
+                consumer.accept(entry.getKey(), object);
+        }
+    }
+
+    public boolean containsKey(CacheKey key)
+    {
+        return entries.containsKey(key);
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        markIncomplete();
+        entries.clear();
+        absent.clear();
+        for (CacheIndex index : indexes.values())
+            index.clear();
+    }
+
+    int getKeysWithNoValue()
+    {
+        int count = 0;
+        for (Entry entry : entries.values())
+            if (entry.reference.get() == null)
+                count++;
+        return count;
+    }
+
+    static class Entry
+    {
+        final SoftReference<Object> reference;
+        final long expiresAt;
+        final long insertion;
+        volatile long lastAccess;
+        volatile int accesses; // approximate, concurrent increments may be lost
+
+        Entry(Object object, long expiresAt, long insertion)
+        {
+            this.reference = new SoftReference<>(object);
+            this.expiresAt = expiresAt;
+            this.insertion = insertion;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package net.ehicks.eoi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves EOICache to a local file and restores it on startup.
+ * <br>A table is only restored if its watermark (row count, max pk and max CachePolicy.watermarkColumn) shows no
+ * deletes since the save, rows updated since are skipped.
+ */
+public class CacheSnapshot
+{
+    private static final Logger log = LoggerFactory.getLogger(CacheSnapshot.class);
+    private static final int MAGIC = 0x454F4953; // EOIS
+    private static final int VERSION = 1;
+
+    /** also restore entities without a CachePolicy.watermarkColumn, for tables whose rows are never updated in place */
+    public static boolean restoreWithoutWatermark = false;
+
+    private static ScheduledExecutorService scheduler;
+    static boolean restored = false;
+
+    public static synchronized void save(Path path)
+    {
+        long start = System.currentTimeMillis();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        int entries = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            List<DBMap> dbMaps = new ArrayList<>();
+            for (DBMap dbMap : DBMap.dbMaps)
+                if (dbMap.getCacheRegion().enabled)
+                    dbMaps.add(dbMap);
+            out.writeInt(dbMaps.size());
+
+            for (DBMap dbMap : dbMaps)
+            {
+                out.writeUTF(dbMap.tableName);
+                out.writeInt(getLayoutSignature(dbMap));
+                out.writeUTF(getWatermark(dbMap));
+
+                CacheRegion region = dbMap.getCacheRegion();
+                int[] written = {0};
+                IOException[] failure = {null};
+                region.forEach((key, object) -> {
+                    if (failure[0] == null)
+                        failure[0] = writeEntry(out, EntityCodec.encode(dbMap, object));
+                    written[0]++;
+                });
+                if (OffHeapCache.enabled)
+                    OffHeapCache.forEachEncoded(dbMap, (key, encoded) -> {
+                        if (failure[0] == null && !region.containsKey(key))
+                        {
+                            failure[0] = writeEntry(out, encoded);
+                            written[0]++;
+                        }
+                    });
+                if (failure[0] != null)
+                    throw failure[0];
+
+                out.writeInt(-1);
+                entries += written[0];
+            }
+        }
+        catch (IOException | SQLException e)
+        {
+            log.error("Unable to save cache snapshot: " + e.getMessage(), e);
+            return;
+        }
+
+        try
+        {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to save cache snapshot: " + e.getMessage(), e);
+            return;
+        }
+        log.info("Saved {} cache entries to {} in {} ms", entries, path, System.currentTimeMillis() - start);
+    }
+
+    private static IOException writeEntry(DataOutputStream out, byte[] encoded)
+    {
+        try
+        {
+            out.writeInt(encoded.length);
+            out.write(encoded);
+            return null;
+        }
+        catch (IOException e)
+        {
+            return e;
+        }
+    }
+
+    /**
+     * Restores the snapshot at path, at most once per JVM.
+     */
+    public static synchronized void restore(Path path)
+    {
+        if (restored || !Files.exists(path))
+            return;
+        restored = true;
+
+        long start = System.currentTimeMillis();
+        int loaded = 0;
+        int dropped = 0;
+        // streamed rather than mapped, a mapping would hold the file open until GC and block save's move on Windows
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                log.warn("Ignoring cache snapshot {}, unrecognized format", path);
+                return;
+            }
+
+            int tables = in.readInt();
+            for (int t = 0; t < tables; t++)
+            {
+                DBMap dbMap = DBMap.getDBMapByTableName(in.readUTF());
+                int layoutSignature = in.readInt();
+                String savedWatermark = in.readUTF();
+
+                Set<CacheKey> stale = null;
+                if (dbMap != null && EOICache.isCached(dbMap) && layoutSignature == getLayoutSignature(dbMap))
+                    stale = getStaleKeys(dbMap, savedWatermark);
+
+                for (int length = in.readInt(); length != -1; length = in.readInt())
+                {
+                    byte[] encoded = new byte[length];
+                    in.readFully(encoded);
+                    if (stale == null)
+                    {
+                        dropped++;
+                        continue;
+                    }
+
+                    Object object = EntityCodec.decode(dbMap, ByteBuffer.wrap(encoded));
+                    CacheKey key = CacheKey.fromObject(dbMap, object);
+                    if (key == null || stale.contains(key))
+                    {
+                        dropped++;
+                        continue;
+                    }
+                    EOICache.set(key, object);
+                    loaded++;
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            log.error("Unable to restore cache snapshot: " + e.getMessage(), e);
+        }
+        log.info("Restored {} cache entries from {} in {} ms, dropped {} stale entries", loaded, path, System.currentTimeMillis() - start, dropped);
+    }
+
+    /**
+     * @return keys to skip, or null if the whole table is stale
+     */
+    private static Set<CacheKey> getStaleKeys(DBMap dbMap, String savedWatermark) throws SQLException
+    {
+        String watermarkColumn = dbMap.getCacheRegion().watermarkColumn;
+        if (watermarkColumn.isEmpty() && !restoreWithoutWatermark)
+            return null;
+
+        String currentWatermark = getWatermark(dbMap);
+        if (currentWatermark.equals(savedWatermark))
+            return Collections.emptySet();
+
+        // rows were deleted if fewer rows remain at or below the saved max key than were saved (keys aren't reused)
+        String[] saved = savedWatermark.split(":", -1);
+        if (!dbMap.isNumericPK() || saved[1].equals("null"))
+            return null;
+        DBMapField pkField = dbMap.getPKFields().get(0);
+        String countQuery = "select count(*) from " + dbMap.tableName + " where " + pkField.columnName + " <= ?";
+        Object[] count = (Object[]) EOI.getPrintableResult(countQuery, Collections.singletonList(Long.parseLong(saved[1]))).get("resultRows").get(0);
+        if (!saved[0].equals(String.valueOf(count[0])))
+            return null;
+
+        if (watermarkColumn.isEmpty())
+            return Collections.emptySet();
+
+        // skip the rows whose watermark moved past the saved one, or was set at all if every row was null at save time
+        String queryString = "select " + pkField.columnName + " from " + dbMap.tableName + " where " + watermarkColumn;
+        List<Object> args = new ArrayList<>();
+        if (saved[2].isEmpty())
+            queryString += " is not null";
+        else
+        {
+            DBMapField watermarkField = dbMap.getFieldByColumnName(watermarkColumn);
+            queryString += " > ?";
+            args.add(watermarkField.type.equals(DBMapField.TIMESTAMP) ? new Timestamp(Long.parseLong(saved[2])) : (Object) Long.parseLong(saved[2]));
+        }
+
+        Set<CacheKey> stale = new HashSet<>();
+        for (Object row : EOI.getPrintableResult(queryString, args).get("resultRows"))
+            stale.add(CacheKey.of(dbMap, ((Object[]) row)[0]));
+        return stale;
+    }
+
+    /**
+     * count:maxPk:maxWatermarkColumn, the last part empty when the entity has no watermark column.
+     */
+    static String getWatermark(DBMap dbMap) throws SQLException
+    {
+        String watermarkColumn = dbMap.getCacheRegion().watermarkColumn;
+        String queryString = "select count(*), max(" + dbMap.getPKFields().get(0).columnName + ")";
+        if (!watermarkColumn.isEmpty())
+            queryString += ", max(" + watermarkColumn + ")";
+        queryString += " from " + dbMap.tableName;
+
+        Object[] row = (Object[]) EOI.getPrintableResult(queryString).get("resultRows").get(0);
+        String watermark = row[0] + ":" + row[1] + ":";
+        if (row.length > 2 && row[2] != null)
+            watermark += row[2] instanceof Date ? ((Date) row[2]).getTime() : row[2];
+        return watermark;
+    }
+
+    private static int getLayoutSignature(DBMap dbMap)
+    {
+        int signature = 1;
+        for (DBMapField field : dbMap.fields)
+            signature = 31 * signature + (field.columnName + ":" + field.type).hashCode();
+        return signature;
+    }
+
+    public static synchronized void schedule(Path path, long period, TimeUnit unit)
+    {
+        if (scheduler == null)
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "eoi-cache-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        scheduler.scheduleAtFixedRate(() -> save(path), period, period, unit);
+    }
+
+    public static synchronized void cancelSchedule()
+    {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+}
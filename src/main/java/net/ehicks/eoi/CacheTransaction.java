@@ -0,0 +1,117 @@
+package net.ehicks.eoi;
+
+import java.util.*;
+
+/**
+ * Per-thread buffer of cache changes made inside a transaction, applied to the shared caches on commit and
+ * evicted on rollback.
+ */
+public class CacheTransaction
+{
+    private static final Object REMOVED = new Object();
+    private static final ThreadLocal<CacheTransaction> current = new ThreadLocal<>();
+
+    private final Map<CacheKey, Object> staged = new LinkedHashMap<>();
+    private final Set<String> tablesWritten = new HashSet<>();
+    private final Set<CacheKey> invalidations = new LinkedHashSet<>();
+
+    static CacheTransaction getActive()
+    {
+        if (!EOI.isInTransaction())
+            return null;
+
+        CacheTransaction cacheTransaction = current.get();
+        if (cacheTransaction == null)
+        {
+            cacheTransaction = new CacheTransaction();
+            current.set(cacheTransaction);
+        }
+        return cacheTransaction;
+    }
+
+    void stageSet(CacheKey key, Object object)
+    {
+        staged.put(key, object);
+    }
+
+    void stageUnset(CacheKey key)
+    {
+        staged.put(key, REMOVED);
+    }
+
+    boolean isStaged(CacheKey key)
+    {
+        return staged.containsKey(key);
+    }
+
+    /**
+     * Only meaningful when isStaged(key), null means the key was evicted in this transaction.
+     */
+    Object getStaged(CacheKey key)
+    {
+        Object object = staged.get(key);
+        return object == REMOVED ? null : object;
+    }
+
+    void addTableWritten(String table)
+    {
+        tablesWritten.add(table.toLowerCase());
+    }
+
+    void addInvalidation(CacheKey key)
+    {
+        invalidations.add(key);
+    }
+
+    static void commit()
+    {
+        CacheTransaction cacheTransaction = current.get();
+        current.remove();
+        if (cacheTransaction == null)
+            return;
+
+        for (Map.Entry<CacheKey, Object> entry : cacheTransaction.staged.entrySet())
+        {
+            if (entry.getValue() == REMOVED)
+                EOICache.unset(entry.getKey());
+            else
+                EOICache.set(entry.getKey(), entry.getValue());
+        }
+
+        // other connections couldn't see the writes until now, and may have re-cached old rows or completed a
+        // region in the meantime. An empty table name is a statement that couldn't be parsed and hits every region.
+        for (String table : cacheTransaction.tablesWritten)
+        {
+            QueryCache.invalidateTable(table);
+            EOI.markIncomplete(table);
+        }
+
+        if (EOI.invalidationBus != null && !cacheTransaction.invalidations.isEmpty())
+            EOI.invalidationBus.publish(new ArrayList<>(cacheTransaction.invalidations));
+    }
+
+    static void rollback()
+    {
+        CacheTransaction cacheTransaction = current.get();
+        current.remove();
+        if (cacheTransaction == null)
+            return;
+
+        // straight to the regions, EOICache.unset would stage again if the connection is still in a transaction
+        Set<CacheKey> written = new HashSet<>(cacheTransaction.staged.keySet());
+        written.addAll(cacheTransaction.invalidations);
+        for (CacheKey key : written)
+        {
+            CacheRegion region = key.dbMap.getCacheRegion();
+            region.remove(key);
+            region.markIncomplete();
+            if (OffHeapCache.enabled)
+                OffHeapCache.remove(key);
+        }
+        for (String table : cacheTransaction.tablesWritten)
+        {
+            QueryCache.invalidateTable(table);
+            EOI.markIncomplete(table);
+        }
+    }
+}
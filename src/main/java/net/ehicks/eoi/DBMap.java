@@ -23,6 +23,12 @@ public class DBMap
     public String tableName = "";
     public List<DBMapField> fields = new ArrayList<>();
     public List<String> indexDefinitions = new ArrayList<>();
+    public CacheRegion cacheRegion;
+
+    private List<DBMapField> pkFields;
+    private List<DBMapField> nonPkFields;
+    private Boolean numericPK;
+    private String selectByIdStatement;
 
     public static DBMap getDBMapByTableName(String tableName)
     {
@@ -32,6 +38,14 @@ public class DBMap
         return null;
     }
 
+    public static DBMap getDBMapByClassName(String className)
+    {
+        for (DBMap dbMap : dbMaps)
+            if (dbMap.className.equals(className))
+                return dbMap;
+        return null;
+    }
+
     public static DBMap getDBMapByClass(Class clazz)
     {
         for (DBMap dbMap : dbMaps)
@@ -62,6 +76,13 @@ public class DBMap
                         continue;
                     dbMap.tableName = annotation.name();
 
+                    dbMap.cacheRegion = new CacheRegion(dbMap);
+                    CachePolicy cachePolicy = (CachePolicy) beanClass.getAnnotation(CachePolicy.class);
+                    if (cachePolicy != null)
+                        dbMap.cacheRegion.applyPolicy(cachePolicy);
+
+                    NamedQueryRegistry.register(dbMap, beanClass);
+
                     Indexes indexesAnnotation = (Indexes) beanClass.getAnnotation(Indexes.class);
                     if (indexesAnnotation != null)
                     {
@@ -91,12 +112,25 @@ public class DBMap
                             dbMapField.autoIncrement = column.columnDefinition().contains("auto_increment");
                             dbMapField.declaredColumnDefinition = column.columnDefinition();
                             dbMap.fields.add(dbMapField);
+
+                            References references = f.getAnnotation(References.class);
+                            if (references != null)
+                                dbMapField.referencedClass = references.value();
+
+                            CacheIndexed cacheIndexed = f.getAnnotation(CacheIndexed.class);
+                            if (cacheIndexed != null)
+                                dbMap.cacheRegion.addIndex(dbMapField, cacheIndexed.sorted());
                         }
                     }
 
                     DBMap.dbMaps.add(dbMap);
                 }
             }
+
+            ResultPlan.clear();
+            NamedQueryRegistry.prepare();
+            if (EOI.cacheSnapshotPath != null && EOI.enableCache && EOI.cp != null)
+                CacheSnapshot.restore(EOI.cacheSnapshotPath);
         }
         catch (ClassNotFoundException | NoSuchMethodException e)
         {
@@ -128,6 +162,21 @@ public class DBMap
         return null;
     }
 
+    public CacheRegion getCacheRegion()
+    {
+        if (cacheRegion == null)
+            cacheRegion = new CacheRegion(this);
+        return cacheRegion;
+    }
+
+    public DBMapField getFieldByFieldName(String fieldName)
+    {
+        for (DBMapField field : fields)
+            if (field.fieldName.equals(fieldName))
+                return field;
+        return null;
+    }
+
     public DBMapField getFieldByColumnName(String columnName)
     {
         for (DBMapField field : fields)
@@ -138,19 +187,45 @@ public class DBMap
 
     public List<DBMapField> getPKFields()
     {
-        List<DBMapField> pkFields = new ArrayList<>();
-        for (DBMapField field : fields)
-            if (field.primaryKey)
-                pkFields.add(field);
+        if (pkFields == null)
+        {
+            List<DBMapField> pkFields = new ArrayList<>();
+            for (DBMapField field : fields)
+                if (field.primaryKey)
+                    pkFields.add(field);
+            this.pkFields = pkFields;
+        }
         return pkFields;
     }
 
+    public String getSelectByIdStatement()
+    {
+        if (selectByIdStatement == null)
+            selectByIdStatement = SQLGenerator.getSelectByIdsStatement(this, 1);
+        return selectByIdStatement;
+    }
+
     public List<DBMapField> getNonPKFields()
     {
-        List<DBMapField> nonPkFields = new ArrayList<>();
-        for (DBMapField field : fields)
-            if (!field.primaryKey)
-                nonPkFields.add(field);
+        if (nonPkFields == null)
+        {
+            List<DBMapField> nonPkFields = new ArrayList<>();
+            for (DBMapField field : fields)
+                if (!field.primaryKey)
+                    nonPkFields.add(field);
+            this.nonPkFields = nonPkFields;
+        }
         return nonPkFields;
     }
+
+    public boolean isNumericPK()
+    {
+        if (numericPK == null)
+        {
+            List<DBMapField> pkFields = getPKFields();
+            numericPK = pkFields.size() == 1
+                    && (pkFields.get(0).type.equals(DBMapField.LONG) || pkFields.get(0).type.equals(DBMapField.INTEGER));
+        }
+        return numericPK;
+    }
 }
@@ -28,6 +28,10 @@ public class DBMapField
     public boolean primaryKey;
     public boolean autoIncrement;
     public String declaredColumnDefinition = "";
+    public Class referencedClass;
+
+    private Method getter;
+    private Method setter;
 
     public String toString()
     {
@@ -108,9 +112,12 @@ public class DBMapField
 
     public Method getGetter()
     {
+        if (getter != null)
+            return getter;
         try
         {
-            return dbMap.clazz.getDeclaredMethod("get" + Common.capFirstLetter(fieldName));
+            getter = dbMap.clazz.getDeclaredMethod("get" + Common.capFirstLetter(fieldName));
+            return getter;
         }
         catch (NoSuchMethodException e)
         {
@@ -121,9 +128,12 @@ public class DBMapField
 
     public Method getSetter()
     {
+        if (setter != null)
+            return setter;
         try
         {
-            return dbMap.clazz.getDeclaredMethod("set" + Common.capFirstLetter(fieldName), clazz);
+            setter = dbMap.clazz.getDeclaredMethod("set" + Common.capFirstLetter(fieldName), clazz);
+            return setter;
         }
         catch (NoSuchMethodException e)
         {
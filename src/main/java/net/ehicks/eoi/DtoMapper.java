@@ -0,0 +1,237 @@
+package net.ehicks.eoi;
+
+import java.beans.ConstructorProperties;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Maps result rows into a DTO class, matching columns to names ignoring case and underscores.
+ * <br>Uses the constructor with the most parameters that all match a column, else the no-arg constructor and fields.
+ */
+public class DtoMapper
+{
+    public static int maxCachedMappers = 1000;
+
+    private static final ConcurrentMap<List<Object>, DtoMapper> mappers = new ConcurrentHashMap<>();
+
+    private final Constructor<?> constructor;
+    private final boolean constructorMapping;
+    private final int[] columns;
+    private final Field[] fields;
+    private final List<Function<Object, Object>> converters;
+
+    private DtoMapper(Constructor<?> constructor, boolean constructorMapping, int[] columns, Field[] fields, List<Function<Object, Object>> converters)
+    {
+        this.constructor = constructor;
+        this.constructorMapping = constructorMapping;
+        this.columns = columns;
+        this.fields = fields;
+        this.converters = converters;
+    }
+
+    static DtoMapper get(Class<?> dtoClass, String queryString, ResultSetMetaData metaData) throws SQLException
+    {
+        List<Object> key = Arrays.asList(dtoClass, queryString);
+        DtoMapper mapper = mappers.get(key);
+        if (mapper == null)
+        {
+            mapper = compile(dtoClass, metaData);
+            if (mappers.size() >= maxCachedMappers)
+                mappers.clear();
+            mappers.put(key, mapper);
+        }
+        return mapper;
+    }
+
+    Object map(ResultSet resultSet) throws SQLException, ReflectiveOperationException
+    {
+        if (constructorMapping)
+        {
+            Object[] args = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++)
+                args[i] = converters.get(i).apply(resultSet.getObject(columns[i]));
+            return constructor.newInstance(args);
+        }
+
+        Object dto = constructor.newInstance();
+        for (int i = 0; i < columns.length; i++)
+        {
+            Object value = converters.get(i).apply(resultSet.getObject(columns[i]));
+            if (value != null || !fields[i].getType().isPrimitive())
+                fields[i].set(dto, value);
+        }
+        return dto;
+    }
+
+    private static DtoMapper compile(Class<?> dtoClass, ResultSetMetaData metaData) throws SQLException
+    {
+        Map<String, Integer> columnsByName = new LinkedHashMap<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++)
+            columnsByName.put(normalize(metaData.getColumnLabel(i)), i);
+
+        Constructor<?> best = null;
+        String[] bestNames = null;
+        for (Constructor<?> constructor : dtoClass.getDeclaredConstructors())
+        {
+            String[] names = getParameterNames(constructor);
+            if (names == null || names.length == 0 || (best != null && names.length <= bestNames.length))
+                continue;
+            boolean allMatch = true;
+            for (String name : names)
+                allMatch &= columnsByName.containsKey(normalize(name));
+            if (allMatch)
+            {
+                best = constructor;
+                bestNames = names;
+            }
+        }
+
+        if (best != null)
+        {
+            best.setAccessible(true);
+            Class<?>[] types = best.getParameterTypes();
+            int[] columns = new int[bestNames.length];
+            List<Function<Object, Object>> converters = new ArrayList<>(bestNames.length);
+            for (int i = 0; i < bestNames.length; i++)
+            {
+                columns[i] = columnsByName.get(normalize(bestNames[i]));
+                converters.add(getConverter(types[i]));
+            }
+            return new DtoMapper(best, true, columns, null, converters);
+        }
+
+        Map<String, Field> fieldsByName = new HashMap<>();
+        for (Class<?> c = dtoClass; c != null && c != Object.class; c = c.getSuperclass())
+            for (Field field : c.getDeclaredFields())
+                if (!Modifier.isStatic(field.getModifiers()))
+                    fieldsByName.putIfAbsent(normalize(field.getName()), field);
+
+        int[] columns = new int[columnsByName.size()];
+        Field[] fields = new Field[columnsByName.size()];
+        List<Function<Object, Object>> converters = new ArrayList<>(columnsByName.size());
+        int i = 0;
+        for (Map.Entry<String, Integer> column : columnsByName.entrySet())
+        {
+            Field field = fieldsByName.get(column.getKey());
+            if (field == null)
+                throw new IllegalArgumentException(dtoClass.getSimpleName() + " has no constructor or field for column " + metaData.getColumnLabel(column.getValue()));
+            field.setAccessible(true);
+            columns[i] = column.getValue();
+            fields[i] = field;
+            converters.add(getConverter(field.getType()));
+            i++;
+        }
+
+        try
+        {
+            Constructor<?> constructor = dtoClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return new DtoMapper(constructor, false, columns, fields, converters);
+        }
+        catch (NoSuchMethodException e)
+        {
+            throw new IllegalArgumentException(dtoClass.getSimpleName() + " has neither a constructor matching the columns nor a no-arg constructor");
+        }
+    }
+
+    private static String[] getParameterNames(Constructor<?> constructor)
+    {
+        ConstructorProperties constructorProperties = constructor.getAnnotation(ConstructorProperties.class);
+        if (constructorProperties != null)
+            return constructorProperties.value();
+
+        Parameter[] parameters = constructor.getParameters();
+        if (parameters.length == 0 || !parameters[0].isNamePresent())
+            return null;
+        String[] names = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++)
+            names[i] = parameters[i].getName();
+        return names;
+    }
+
+    private static String normalize(String name)
+    {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static Function<Object, Object> getConverter(Class<?> type)
+    {
+        Class<?> target = box(type);
+        Object nullValue = type.isPrimitive() ? getPrimitiveDefault(type) : null;
+        return value -> {
+            if (value == null)
+                return nullValue;
+            if (target.isInstance(value))
+                return value;
+            return convert(value, target);
+        };
+    }
+
+    private static Object convert(Object value, Class<?> target)
+    {
+        try
+        {
+            if (value instanceof Number)
+            {
+                Number number = (Number) value;
+                if (target == Long.class) return number.longValue();
+                if (target == Integer.class) return number.intValue();
+                if (target == Short.class) return number.shortValue();
+                if (target == Double.class) return number.doubleValue();
+                if (target == Float.class) return number.floatValue();
+                if (target == BigDecimal.class) return new BigDecimal(number.toString());
+                if (target == BigInteger.class) return new BigDecimal(number.toString()).toBigInteger();
+                if (target == Boolean.class) return number.intValue() != 0;
+            }
+            if (value instanceof Timestamp && target == java.time.LocalDateTime.class)
+                return ((Timestamp) value).toLocalDateTime();
+            if (value instanceof java.sql.Date && target == java.time.LocalDate.class)
+                return ((java.sql.Date) value).toLocalDate();
+            if (value instanceof Blob && target == byte[].class)
+                return ((Blob) value).getBytes(1, (int) ((Blob) value).length());
+            if (value instanceof Clob && target == String.class)
+                return ((Clob) value).getSubString(1, (int) ((Clob) value).length());
+            if (target == String.class)
+                return value.toString();
+        }
+        catch (SQLException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        throw new IllegalArgumentException("Can't convert " + value.getClass().getName() + " to " + target.getName());
+    }
+
+    private static Class<?> box(Class<?> type)
+    {
+        if (!type.isPrimitive()) return type;
+        if (type == long.class) return Long.class;
+        if (type == int.class) return Integer.class;
+        if (type == short.class) return Short.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == byte.class) return Byte.class;
+        return Character.class;
+    }
+
+    private static Object getPrimitiveDefault(Class<?> type)
+    {
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        return 0;
+    }
+}
@@ -1,14 +1,17 @@
 package net.ehicks.eoi;
 
+import com.codahale.metrics.Timer;
 import com.zaxxer.hikari.HikariDataSource;
 import org.h2.tools.Server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.*;
 import java.util.Date;
+import java.util.function.Consumer;
 
 public class EOI
 {
@@ -22,6 +25,10 @@ public class EOI
     public static String poolName = "Primary Pool";
     public static ThreadLocal<Connection> conn = new ThreadLocal<>();
     public static int slowQueryThreshold = 100;
+    public static int inClauseChunkSize = 1000;
+    public static int streamFetchSize = 500;
+    public static InvalidationBus invalidationBus;
+    public static Path cacheSnapshotPath;
 
     public static void init(ConnectionInfo connectionInfo)
     {
@@ -46,6 +53,9 @@ public class EOI
             cp.setPoolName(poolName);
             cp.setMetricRegistry(Metrics.getMetricRegistry());
             cp.setJdbcUrl(connectionInfo.getDbConnectionString(true));
+
+            if (cacheSnapshotPath != null && enableCache && !DBMap.dbMaps.isEmpty())
+                CacheSnapshot.restore(cacheSnapshotPath);
         }
         catch (Exception e)
         {
@@ -55,11 +65,44 @@ public class EOI
 
     public static void destroy()
     {
+        if (invalidationBus != null)
+            invalidationBus.stop();
+        if (cacheSnapshotPath != null && enableCache)
+            CacheSnapshot.save(cacheSnapshotPath);
+        RefreshAhead.shutdown();
+        BatchLoader.shutdown();
+        PrometheusExporter.stopServer();
+        Metrics.stopJmxReporter();
         cp.close();
         if (connectionInfo.getDbMode().equals(ConnectionInfo.DbMode.H2_TCP.toString()))
             h2Server.stop();
     }
 
+    /**
+     * Starts the bus and makes EOI publish every committed write to it.
+     */
+    public static void setInvalidationBus(InvalidationBus invalidationBus)
+    {
+        if (EOI.invalidationBus != null)
+            EOI.invalidationBus.stop();
+        EOI.invalidationBus = invalidationBus;
+        if (invalidationBus != null)
+            invalidationBus.start();
+    }
+
+    // published right away outside of a transaction, otherwise held until commit
+    private static void publishInvalidation(CacheKey key)
+    {
+        if (invalidationBus == null || key == null)
+            return;
+
+        CacheTransaction cacheTransaction = CacheTransaction.getActive();
+        if (cacheTransaction != null)
+            cacheTransaction.addInvalidation(key);
+        else
+            invalidationBus.publish(Collections.singletonList(key));
+    }
+
     public static int getSlowQueryThreshold()
     {
         return slowQueryThreshold;
@@ -105,6 +148,19 @@ public class EOI
         getConnection(false);
     }
 
+    public static boolean isInTransaction()
+    {
+        Connection connection = conn.get();
+        try
+        {
+            return connection != null && !connection.getAutoCommit();
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+    }
+
     public static void commit()
     {
         try
@@ -115,11 +171,17 @@ public class EOI
                 connection.commit();
                 closeConnection(true);
             }
+            CacheTransaction.commit();
         }
         catch (Exception e)
         {
             e.printStackTrace();
         }
+        finally
+        {
+            // a no-op once CacheTransaction.commit ran, otherwise drops what the failed commit had staged
+            CacheTransaction.rollback();
+        }
     }
 
     public static void rollback()
@@ -138,6 +200,10 @@ public class EOI
         {
             e.printStackTrace();
         }
+        finally
+        {
+            CacheTransaction.rollback();
+        }
     }
 
     private static void closeConnection(boolean hardClose)
@@ -168,12 +234,20 @@ public class EOI
     {
         log.debug("executeUpdate(), Query: {}", queryString);
 
+        QueryTiming timing = QueryTiming.start(queryString);
         Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
         try
         {
             try (Statement statement = connection.createStatement();)
             {
-                return statement.executeUpdate(queryString);
+                int result = statement.executeUpdate(queryString);
+                logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, Collections.emptyList());
+                timing.finish(result);
+                String tableName = SQLQuery.parseSQL(queryString).tableName;
+                QueryCache.invalidateTable(tableName);
+                markIncomplete(tableName);
+                return result;
             }
             catch (Exception e)
             {
@@ -198,14 +272,22 @@ public class EOI
     {
         log.debug("executePreparedUpdate(), Query: {}, Args: {}", queryString, args);
 
+        QueryTiming timing = QueryTiming.start(queryString);
         Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
         try (PreparedStatement preparedStatement = connection.prepareStatement(queryString);)
         {
             int argIndex = 1;
             for (Object arg : args)
                 setPreparedStatementParameter(preparedStatement, argIndex++, arg);
 
-            return preparedStatement.executeUpdate();
+            int result = preparedStatement.executeUpdate();
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, args);
+            timing.finish(result);
+            String tableName = SQLQuery.parseSQL(queryString).tableName;
+            QueryCache.invalidateTable(tableName);
+            markIncomplete(tableName);
+            return result;
         }
         catch (Exception e)
         {
@@ -220,14 +302,43 @@ public class EOI
         return 0;
     }
 
+    private static void logIfSlow(long executeNanos, String queryString, List<Object> args)
+    {
+        if (executeNanos >= slowQueryThreshold * 1_000_000L)
+        {
+            String message = "EOI QUERY took {} ms: {}. Args: {}";
+            log.info(message, executeNanos / 1_000_000, queryString, args);
+        }
+    }
+
+    // rows written without going through EOICache leave the region unable to answer CacheIndexed lookups
+    // an empty name means the statement's table couldn't be parsed, so any region may have been written
+    static void markIncomplete(String tableName)
+    {
+        if (tableName == null || tableName.isEmpty())
+        {
+            for (DBMap dbMap : DBMap.dbMaps)
+                dbMap.getCacheRegion().markIncomplete();
+            return;
+        }
+
+        DBMap dbMap = DBMap.getDBMapByTableName(tableName);
+        if (dbMap != null)
+            dbMap.getCacheRegion().markIncomplete();
+    }
+
     public static void execute(String queryString)
     {
         log.debug("execute(), Query: {}", queryString);
 
+        QueryTiming timing = QueryTiming.start(queryString);
         try (Connection connection = getConnection();
              Statement statement = connection.createStatement();)
         {
+            timing.mark(QueryTiming.Phase.ACQUIRE);
             statement.execute(queryString);
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, Collections.emptyList());
+            timing.finish(0);
         }
         catch (Exception e)
         {
@@ -265,7 +376,9 @@ public class EOI
     {
         String insertStatement = SQLGenerator.getInsertStatement(object);
 
+        QueryTiming timing = QueryTiming.start(insertStatement);
         Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
         try (PreparedStatement preparedStatement = connection.prepareStatement(insertStatement, Statement.RETURN_GENERATED_KEYS);)
         {
             DBMap dbMap = DBMap.getDBMapByClass(object.getClass());
@@ -287,16 +400,37 @@ public class EOI
             }
 
             int queryResult = preparedStatement.executeUpdate();
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), insertStatement, Collections.emptyList());
+            timing.finish(queryResult);
+            QueryCache.invalidateTable(dbMap.tableName);
+            dbMap.getCacheRegion().markIncomplete();
+
+            // a key assigned by the caller is known now, a generated one only after reading it back
+            CacheKey key = CacheKey.fromObject(dbMap, object);
+            if (key != null)
+                EOICache.unsetAbsent(key);
 
             ResultSet generatedKeysResultSet = preparedStatement.getGeneratedKeys();
             if (generatedKeysResultSet == null || !generatedKeysResultSet.next())
+            {
+                publishInvalidation(key);
                 return 0;
+            }
 
             long generatedKey = generatedKeysResultSet.getLong(1);
             log.debug("_insert(), Object Class: {}, Generated Key: {}", object.getClass().toString(), generatedKey);
 
             // prepare audit
+            timing.restart();
             createAudit(auditUser, "INSERT", dbMap, generatedKey);
+            timing.mark(QueryTiming.Phase.AUDIT);
+
+            if (key == null && dbMap.isNumericPK())
+            {
+                key = CacheKey.of(dbMap, generatedKey);
+                EOICache.unsetAbsent(key);
+            }
+            publishInvalidation(key);
 
             return generatedKey;
         }
@@ -318,7 +452,9 @@ public class EOI
 
         String insertStatement = SQLGenerator.getInsertStatement(objects.get(0));
 
+        QueryTiming timing = QueryTiming.start(insertStatement);
         Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
         try (PreparedStatement preparedStatement = connection.prepareStatement(insertStatement))
         {
             DBMap dbMap = DBMap.getDBMapByClass(objects.get(0).getClass());
@@ -339,6 +475,11 @@ public class EOI
                 preparedStatement.addBatch();
             }
             preparedStatement.executeBatch();
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), insertStatement, Collections.emptyList());
+            timing.finish(objects.size());
+            QueryCache.invalidateTable(dbMap.tableName);
+            EOICache.clearAbsent(dbMap);
+            dbMap.getCacheRegion().markIncomplete();
         }
         catch (Exception e)
         {
@@ -404,7 +545,9 @@ public class EOI
         if (psIngredients == null)
             return 0;
 
+        QueryTiming timing = QueryTiming.start(psIngredients.query);
         Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
         try (PreparedStatement preparedStatement = connection.prepareStatement(psIngredients.query);)
         {
             int argIndex = 1;
@@ -412,18 +555,24 @@ public class EOI
                 setPreparedStatementParameter(preparedStatement, argIndex++, arg);
 
             int result = preparedStatement.executeUpdate();
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), psIngredients.query, psIngredients.args);
+            timing.finish(result);
             if (result == 1)
             {
                 DBMap dbMap = DBMap.getDBMapByClass(object.getClass());
+                QueryCache.invalidateTable(dbMap.tableName);
+                timing.restart();
                 for (PSIngredients.UpdatedField updatedField : psIngredients.updatedFields)
                 {
                     String oldValue = updatedField.oldValue == null ? "<NULL>" : updatedField.oldValue.toString();
                     String newValue = updatedField.newValue == null ? "<NULL>" : updatedField.newValue.toString();
                     createAudit(auditUser, "UPDATE", dbMap, 0, object, updatedField.fieldName, oldValue, newValue);
                 }
+                timing.mark(QueryTiming.Phase.AUDIT);
 
-                if (enableCache)
+                if (EOICache.isCached(dbMap))
                     EOICache.set(object);
+                publishInvalidation(CacheKey.fromObject(dbMap, object));
                 return result;
             }
         }
@@ -440,6 +589,278 @@ public class EOI
         return 0;
     }
 
+    // -------- Primary Key Lookups -------- //
+
+    /**
+     * Serves the object from EOICache when possible.
+     * @param pk a single key value, or an Object[] of key values in DBMap.getPKFields() order
+     */
+    public static <T> T findById(Class<T> clazz, Object pk)
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(clazz);
+        boolean cached = EOICache.isCached(dbMap);
+        CacheKey key = cached ? CacheKey.of(dbMap, pk) : null;
+        if (cached)
+        {
+            Object fromCache = EOICache.get(key);
+            if (fromCache != null)
+            {
+                QueryStatistics.recordCacheHit(dbMap.getSelectByIdStatement());
+                return (T) fromCache;
+            }
+            if (EOICache.isKnownAbsent(key))
+            {
+                QueryStatistics.recordCacheHit(dbMap.getSelectByIdStatement());
+                return null;
+            }
+        }
+
+        String queryString = dbMap.getSelectByIdStatement();
+        List<Object> args = getPKArgs(dbMap, Collections.singletonList(pk));
+        if (!cached || isInTransaction())
+            return executeQueryOneResult(queryString, args, true);
+
+        if (BatchLoader.enabled)
+            return BatchLoader.<T>load(dbMap, pk).join();
+
+        // executeQuery returns null when the query failed, only an empty result means the row doesn't exist
+        List<T> results = SingleFlight.execute(key, () -> executeQuery(queryString, args, true));
+        if (results == null)
+            return null;
+        if (results.isEmpty())
+        {
+            EOICache.setAbsent(key);
+            return null;
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Results follow the order of pks, keys with no matching row are skipped.
+     */
+    public static <T> List<T> findAllByIds(Class<T> clazz, Collection<?> pks)
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(clazz);
+        boolean cached = EOICache.isCached(dbMap);
+        Map<CacheKey, Object> found = new HashMap<>();
+        List<Object> missingPks = new ArrayList<>();
+        for (Object pk : pks)
+        {
+            CacheKey key = CacheKey.of(dbMap, pk);
+            if (found.containsKey(key))
+                continue;
+
+            Object fromCache = cached ? EOICache.get(key) : null;
+            found.put(key, fromCache);
+            if (fromCache == null && !(cached && EOICache.isKnownAbsent(key)))
+                missingPks.add(pk);
+            else
+                QueryStatistics.recordCacheHit(dbMap.getSelectByIdStatement());
+        }
+
+        for (int from = 0; from < missingPks.size(); from += inClauseChunkSize)
+        {
+            List<Object> chunk = missingPks.subList(from, Math.min(from + inClauseChunkSize, missingPks.size()));
+            String queryString = SQLGenerator.getSelectByIdsStatement(dbMap, chunk.size());
+            List<Object> args = getPKArgs(dbMap, chunk);
+            List<Object> results;
+            if (!cached || isInTransaction())
+                results = executeQuery(queryString, args, true);
+            else
+                results = SingleFlight.execute(new QueryKey(queryString, args), () -> executeQuery(queryString, args, true));
+            if (results != null)
+            {
+                for (Object result : results)
+                    found.put(CacheKey.fromObject(dbMap, result), result);
+
+                if (cached && !isInTransaction())
+                    for (Object pk : chunk)
+                        if (found.get(CacheKey.of(dbMap, pk)) == null)
+                            EOICache.setAbsent(CacheKey.of(dbMap, pk));
+            }
+        }
+
+        List<T> results = new ArrayList<>();
+        Set<CacheKey> added = new HashSet<>();
+        for (Object pk : pks)
+        {
+            CacheKey key = CacheKey.of(dbMap, pk);
+            Object object = found.get(key);
+            if (object != null && added.add(key))
+                results.add((T) object);
+        }
+        return results;
+    }
+
+    static List<Object> getPKArgs(DBMap dbMap, List<?> pks)
+    {
+        List<Object> args = new ArrayList<>();
+        for (Object pk : pks)
+        {
+            if (pk instanceof Object[])
+                args.addAll(Arrays.asList((Object[]) pk));
+            else
+                args.add(pk);
+        }
+        return args;
+    }
+
+    // -------- Associations -------- //
+
+    /**
+     * @return referenced objects by foreign key value, keys with no row are left out
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Map<Object, T> loadReferences(List<?> parents, String fieldName)
+    {
+        Map<Object, T> referenced = new HashMap<>();
+        if (parents.isEmpty())
+            return referenced;
+
+        DBMapField field = getReferencesField(DBMap.getDBMapByClass(parents.get(0).getClass()), fieldName);
+        Set<Object> keys = new LinkedHashSet<>();
+        for (Object parent : parents)
+        {
+            Object key = CacheKey.normalize(field, field.getValue(parent));
+            if (key != null)
+                keys.add(key);
+        }
+
+        DBMap target = DBMap.getDBMapByClass(field.referencedClass);
+        DBMapField targetPK = target.getPKFields().get(0);
+        for (Object object : findAllByIds(field.referencedClass, keys))
+            referenced.put(CacheKey.normalize(field, targetPK.getValue(object)), (T) object);
+        return referenced;
+    }
+
+    /**
+     * Loads the children of every parent through childFieldName, a References field of childClass.
+     * @return children by parent key value, parents without children map to an empty list
+     */
+    @SuppressWarnings("unchecked")
+    public static <C> Map<Object, List<C>> loadReferencing(List<?> parents, Class<C> childClass, String childFieldName)
+    {
+        Map<Object, List<C>> children = new LinkedHashMap<>();
+        if (parents.isEmpty())
+            return children;
+
+        DBMap parentDbMap = DBMap.getDBMapByClass(parents.get(0).getClass());
+        DBMap childDbMap = DBMap.getDBMapByClass(childClass);
+        DBMapField field = getReferencesField(childDbMap, childFieldName);
+        if (!field.referencedClass.equals(parentDbMap.clazz))
+            throw new IllegalArgumentException(field + " references " + field.referencedClass.getSimpleName() + ", not " + parentDbMap.className);
+
+        DBMapField parentPK = parentDbMap.getPKFields().get(0);
+        for (Object parent : parents)
+            children.put(CacheKey.normalize(field, parentPK.getValue(parent)), new ArrayList<>());
+        List<Object> keys = new ArrayList<>(children.keySet());
+
+        if (EOICache.isCached(childDbMap))
+        {
+            Map<Object, List<C>> fromCache = new LinkedHashMap<>();
+            for (Object key : keys)
+            {
+                List<Object> found = EOICache.findByIndex(childDbMap, field, key);
+                if (found == null)
+                    break;
+                fromCache.put(key, (List<C>) found);
+            }
+            if (fromCache.size() == keys.size())
+                return fromCache;
+        }
+
+        for (int from = 0; from < keys.size(); from += inClauseChunkSize)
+        {
+            List<Object> chunk = new ArrayList<>(keys.subList(from, Math.min(from + inClauseChunkSize, keys.size())));
+            String queryString = "select * from " + childDbMap.tableName + " where " + field.columnName
+                    + " in (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            List<C> results = executeQuery(queryString, chunk);
+            if (results != null)
+                for (C child : results)
+                    children.get(CacheKey.normalize(field, field.getValue(child))).add(child);
+        }
+        return children;
+    }
+
+    private static DBMapField getReferencesField(DBMap dbMap, String fieldName)
+    {
+        DBMapField field = dbMap.getFieldByFieldName(fieldName);
+        if (field == null || field.referencedClass == null)
+            throw new IllegalArgumentException(dbMap.className + "." + fieldName + " is not a References field");
+        return field;
+    }
+
+    // -------- Secondary Index Lookups -------- //
+
+    private static DBMapField getLookupField(DBMap dbMap, String fieldName)
+    {
+        DBMapField field = dbMap.getFieldByFieldName(fieldName);
+        if (field == null)
+            throw new IllegalArgumentException(dbMap.className + " has no field " + fieldName);
+        return field;
+    }
+
+    /**
+     * Answered from EOICache when the field is CacheIndexed and the region is complete.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> findByIndex(Class<T> clazz, String fieldName, Object value)
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(clazz);
+        DBMapField field = getLookupField(dbMap, fieldName);
+        if (value == null)
+            return executeQuery("select * from " + dbMap.tableName + " where " + field.columnName + " is null");
+
+        if (EOICache.isCached(dbMap))
+        {
+            List<Object> fromCache = EOICache.findByIndex(dbMap, field, value);
+            if (fromCache != null)
+                return (List<T>) fromCache;
+        }
+
+        String queryString = "select * from " + dbMap.tableName + " where " + field.columnName + " = ?";
+        return executeQuery(queryString, new ArrayList<>(Collections.singletonList(value)));
+    }
+
+    public static <T> T findOneByIndex(Class<T> clazz, String fieldName, Object value)
+    {
+        List<T> results = findByIndex(clazz, fieldName, value);
+        if (results != null && results.size() > 0)
+            return results.get(0);
+        return null;
+    }
+
+    /**
+     * @param from inclusive, null for no lower bound
+     * @param to exclusive, null for no upper bound
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> findByIndexRange(Class<T> clazz, String fieldName, Object from, Object to)
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(clazz);
+        DBMapField field = getLookupField(dbMap, fieldName);
+        if (EOICache.isCached(dbMap))
+        {
+            List<Object> fromCache = EOICache.findByIndexRange(dbMap, field, from, to);
+            if (fromCache != null)
+                return (List<T>) fromCache;
+        }
+
+        List<Object> args = new ArrayList<>();
+        String where = " where " + field.columnName + " is not null";
+        if (from != null)
+        {
+            where += " and " + field.columnName + " >= ?";
+            args.add(from);
+        }
+        if (to != null)
+        {
+            where += " and " + field.columnName + " < ?";
+            args.add(to);
+        }
+        return executeQuery("select * from " + dbMap.tableName + where + " order by " + field.columnName, args);
+    }
+
     public static <T> T executeQueryOneResult(String queryString)
     {
         return executeQueryOneResult(queryString, new ArrayList<>(), false);
@@ -469,26 +890,107 @@ public class EOI
     }
 
     public static <T> List<T> executeQuery(String queryString, List<Object> args, boolean bypassCache)
+    {
+        return executeQuery(queryString, ResultPlan.forSQL(queryString), args, bypassCache);
+    }
+
+    public static <T> List<T> executeQuery(Query<T> query)
+    {
+        if (query.cached)
+            return executeCachedQuery(query.getSQL(), query.getPlan(), query.getArgs(), new String[]{query.getDbMap().tableName});
+        return executeQuery(query.getSQL(), query.getPlan(), query.getArgs(), query.bypassCache);
+    }
+
+    /**
+     * A full table read marks the region complete.
+     */
+    static <T> List<T> executeQuery(String queryString, ResultPlan plan, List<Object> args, boolean bypassCache)
+    {
+        if (!enableCache || isInTransaction())
+            return _executeQuery(queryString, plan, args, bypassCache);
+
+        DBMap dbMap = plan.dbMap;
+        if (dbMap == null || !EOICache.isCached(dbMap))
+            return _executeQuery(queryString, plan, args, bypassCache);
+
+        long epoch = plan.fullTable ? dbMap.getCacheRegion().getCompletenessEpoch() : 0;
+
+        List<T> results;
+        if (bypassCache)
+            results = _executeQuery(queryString, plan, args, true);
+        else
+        {
+            results = SingleFlight.execute(new QueryKey(queryString, args), () -> _executeQuery(queryString, plan, args, false));
+            results = results == null ? null : new ArrayList<>(results);
+        }
+
+        if (plan.fullTable && results != null)
+            dbMap.getCacheRegion().markComplete(epoch);
+        return results;
+    }
+
+    private static <T> List<T> _executeQuery(String queryString, ResultPlan plan, List<Object> args, boolean bypassCache)
     {
         log.debug("executeQuery(), Query: {}, Args: {}", queryString, args);
 
+        QueryTiming timing = QueryTiming.start(queryString);
         Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
         try (PreparedStatement preparedStatement = connection.prepareStatement(queryString))
         {
             int argIndex = 1;
             for (Object arg : args)
                 setPreparedStatementParameter(preparedStatement, argIndex++, arg);
 
-            long start = System.currentTimeMillis();
             ResultSet resultSet = preparedStatement.executeQuery();
-            long end = System.currentTimeMillis();
-            if (end - start >= slowQueryThreshold)
-            {
-                String message = "EOI QUERY took {} ms: {}. Args: {}";
-                log.info(message, (end - start), queryString, args);
-            }
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, args);
+
+            HydrationMetrics.Tally tally = HydrationMetrics.start();
+            List<T> results = ResultSetParser.parseResultSet(plan, resultSet, bypassCache, null, tally);
+            timing.mark(QueryTiming.Phase.HYDRATE);
+            HydrationMetrics.record(tally, plan.dbMap, timing.metricFingerprint);
+            timing.finish(results.size());
+            return results;
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            closeConnection(false);
+        }
 
-            return ResultSetParser.parseResultSet(queryString, resultSet, bypassCache);
+        return null;
+    }
+
+    /**
+     * Runs a page query that carries count(*) over() as its last column.
+     * @return null on failure, a total of -1 when no rows came back
+     */
+    static <T> Page<T> executeWindowedPageQuery(String queryString, ResultPlan plan, List<Object> args, boolean bypassCache)
+    {
+        log.debug("executeWindowedPageQuery(), Query: {}, Args: {}", queryString, args);
+
+        QueryTiming timing = QueryTiming.start(queryString);
+        Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(queryString))
+        {
+            int argIndex = 1;
+            for (Object arg : args)
+                setPreparedStatementParameter(preparedStatement, argIndex++, arg);
+
+            ResultSet resultSet = preparedStatement.executeQuery();
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, args);
+
+            long[] total = {-1};
+            HydrationMetrics.Tally tally = HydrationMetrics.start();
+            List<T> rows = ResultSetParser.parseResultSet(plan, resultSet, bypassCache, total, tally);
+            timing.mark(QueryTiming.Phase.HYDRATE);
+            HydrationMetrics.record(tally, plan.dbMap, timing.metricFingerprint);
+            timing.finish(rows.size());
+            return new Page<>(rows, total[0], true);
         }
         catch (Exception e)
         {
@@ -502,6 +1004,157 @@ public class EOI
         return null;
     }
 
+    public static <D> List<D> executeProjection(Class<D> dtoClass, String queryString)
+    {
+        return executeProjection(dtoClass, queryString, new ArrayList<>());
+    }
+
+    /**
+     * @return null on failure
+     */
+    public static <D> List<D> executeProjection(Class<D> dtoClass, String queryString, List<Object> args)
+    {
+        List<D> results = new ArrayList<>();
+        return streamProjection(dtoClass, queryString, args, results::add) == -1 ? null : results;
+    }
+
+    /**
+     * Like executeProjection, but hands rows to consumer without collecting them.
+     * @return the number of rows read, or -1 on failure
+     */
+    public static <D> long streamProjection(Class<D> dtoClass, String queryString, List<Object> args, Consumer<? super D> consumer)
+    {
+        log.debug("streamProjection(), Query: {}, Args: {}", queryString, args);
+
+        QueryTiming timing = QueryTiming.start(queryString);
+        // drivers like Postgres ignore the fetch size under autocommit, so outside a transaction the rows are read
+        // on a connection of their own, kept off the thread so the consumer's own queries don't land in it
+        boolean inTransaction = isInTransaction();
+        Connection connection;
+        try
+        {
+            connection = inTransaction ? conn.get() : cp.getConnection();
+        }
+        catch (SQLException e)
+        {
+            e.printStackTrace();
+            return -1;
+        }
+        timing.mark(QueryTiming.Phase.ACQUIRE);
+        try (PreparedStatement preparedStatement = prepareStreamStatement(connection, inTransaction, queryString))
+        {
+            preparedStatement.setFetchSize(streamFetchSize);
+            int argIndex = 1;
+            for (Object arg : args)
+                setPreparedStatementParameter(preparedStatement, argIndex++, arg);
+
+            ResultSet resultSet = preparedStatement.executeQuery();
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, args);
+
+            DtoMapper mapper = DtoMapper.get(dtoClass, queryString, resultSet.getMetaData());
+            long rows = 0;
+            while (resultSet.next())
+            {
+                consumer.accept(dtoClass.cast(mapper.map(resultSet)));
+                rows++;
+            }
+            timing.mark(QueryTiming.Phase.HYDRATE);
+            timing.finish(rows);
+            return rows;
+        }
+        catch (SQLException | ReflectiveOperationException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (!inTransaction)
+                closeStreamConnection(connection);
+        }
+
+        return -1;
+    }
+
+    private static PreparedStatement prepareStreamStatement(Connection connection, boolean inTransaction, String queryString) throws SQLException
+    {
+        if (!inTransaction)
+            connection.setAutoCommit(false);
+        return connection.prepareStatement(queryString);
+    }
+
+    private static void closeStreamConnection(Connection connection)
+    {
+        try
+        {
+            if (!connection.getAutoCommit())
+            {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.close();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    public static <T> List<T> executeNamedQuery(String name)
+    {
+        return executeNamedQuery(name, new ArrayList<>());
+    }
+
+    public static <T> List<T> executeNamedQuery(String name, List<Object> args)
+    {
+        NamedQueryRegistry.Definition definition = NamedQueryRegistry.get(name, args);
+        Timer.Context context = definition.timer.time();
+        try
+        {
+            return executeQuery(definition.queryString, definition.plan, args, false);
+        }
+        finally
+        {
+            context.stop();
+        }
+    }
+
+    public static <T> List<T> executeCachedQuery(String queryString)
+    {
+        return executeCachedQuery(queryString, new ArrayList<>());
+    }
+
+    /**
+     * Serves repeated SQL plus args from QueryCache, skipped inside a transaction.
+     */
+    public static <T> List<T> executeCachedQuery(String queryString, List<Object> args)
+    {
+        return executeCachedQuery(queryString, ResultPlan.forSQL(queryString), args, null);
+    }
+
+    // tables is null when they have to be read out of the SQL
+    private static <T> List<T> executeCachedQuery(String queryString, ResultPlan plan, List<Object> args, String[] tables)
+    {
+        if (!QueryCache.enabled || isInTransaction())
+            return executeQuery(queryString, plan, args, false);
+
+        List<T> cached = QueryCache.get(queryString, args);
+        if (cached != null)
+        {
+            QueryStatistics.recordCacheHit(queryString);
+            return cached;
+        }
+
+        List<T> results = SingleFlight.execute(new QueryKey(queryString, args), () -> {
+            String[] referencedTables = tables != null ? tables : QueryCache.getReferencedTables(queryString);
+            long[] versions = QueryCache.getVersions(referencedTables);
+            List<T> loaded = executeQuery(queryString, plan, args, false);
+            if (loaded != null)
+                QueryCache.put(queryString, args, referencedTables, versions, loaded);
+            return loaded;
+        });
+        return results == null ? null : new ArrayList<>(results);
+    }
+
     public static Map<String, List<Object>> getPrintableResult(String queryString) throws SQLException
     {
         return getPrintableResult(queryString, Collections.emptyList());
@@ -511,21 +1164,17 @@ public class EOI
     {
         log.debug("getPrintableResult(), Query: {}, Args: {}", queryString, args);
 
+        QueryTiming timing = QueryTiming.start(queryString);
         Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
         try (PreparedStatement preparedStatement = connection.prepareStatement(queryString))
         {
             int argIndex = 1;
             for (Object arg : args)
                 setPreparedStatementParameter(preparedStatement, argIndex++, arg);
 
-            long start = System.currentTimeMillis();
             ResultSet resultSet = preparedStatement.executeQuery();
-            long end = System.currentTimeMillis();
-            if (end - start >= slowQueryThreshold)
-            {
-                String message = "EOI QUERY took {} ms: {}. Args: {}";
-                log.info(message, (end - start), queryString, args);
-            }
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, args);
 
             ResultSetMetaData metaData = resultSet.getMetaData();
             int columns = metaData.getColumnCount();
@@ -545,6 +1194,9 @@ public class EOI
                 resultRows.add(row);
             }
 
+            timing.mark(QueryTiming.Phase.HYDRATE);
+            timing.finish(resultRows.size());
+
             Map<String, List<Object>> printableResults = new HashMap<>();
             printableResults.put("columnLabels", columnLabels);
             printableResults.put("resultRows", resultRows);
@@ -564,11 +1216,22 @@ public class EOI
 
     public static <T> List<T> executeQueryWithoutPS(String queryString, boolean bypassCache)
     {
+        QueryTiming timing = QueryTiming.start(queryString);
         try (Connection connection = getConnection();
-             Statement statement = connection.createStatement();
-             ResultSet resultSet = statement.executeQuery(queryString);)
+             Statement statement = connection.createStatement();)
         {
-            return ResultSetParser.parseResultSet(queryString, resultSet, bypassCache);
+            timing.mark(QueryTiming.Phase.ACQUIRE);
+            try (ResultSet resultSet = statement.executeQuery(queryString))
+            {
+                logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), queryString, Collections.emptyList());
+                ResultPlan plan = ResultPlan.forSQL(queryString);
+                HydrationMetrics.Tally tally = HydrationMetrics.start();
+                List<T> results = ResultSetParser.parseResultSet(plan, resultSet, bypassCache, null, tally);
+                timing.mark(QueryTiming.Phase.HYDRATE);
+                HydrationMetrics.record(tally, plan.dbMap, timing.metricFingerprint);
+                timing.finish(results.size());
+                return results;
+            }
         }
         catch (Exception e)
         {
@@ -583,28 +1246,41 @@ public class EOI
         if (psIngredients == null)
             return 0;
 
-        try (Connection connection = getConnection();
-             PreparedStatement preparedStatement = connection.prepareStatement(psIngredients.query);)
+        QueryTiming timing = QueryTiming.start(psIngredients.query);
+        Connection connection = getConnection();
+        timing.mark(QueryTiming.Phase.ACQUIRE);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(psIngredients.query);)
         {
             int argIndex = 1;
             for (Object arg : psIngredients.args)
                 setPreparedStatementParameter(preparedStatement, argIndex++, arg);
 
             int result = preparedStatement.executeUpdate();
+            logIfSlow(timing.mark(QueryTiming.Phase.EXECUTE), psIngredients.query, psIngredients.args);
+            timing.finish(result);
             if (result == 1)
             {
                 // prepare audit
                 DBMap dbMap = DBMap.getDBMapByClass(object.getClass());
+                QueryCache.invalidateTable(dbMap.tableName);
+                timing.restart();
                 createAudit(auditUser, "DELETE", dbMap, (Long) dbMap.getPKFields().get(0).getGetter().invoke(object));
+                timing.mark(QueryTiming.Phase.AUDIT);
 
                 EOICache.unset(object);
+                publishInvalidation(CacheKey.fromObject(dbMap, object));
                 return result;
             }
         }
         catch (Exception e)
         {
+            rollback();
             e.printStackTrace();
         }
+        finally
+        {
+            closeConnection(false);
+        }
 
         return 0;
     }
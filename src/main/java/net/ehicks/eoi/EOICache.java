@@ -1,62 +1,258 @@
 package net.ehicks.eoi;
 
-import java.lang.ref.SoftReference;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
+/**
+ * Entity cache, split into one CacheRegion per DBMap so each entity can carry its own CachePolicy.
+ */
 public class EOICache
 {
-    public static ConcurrentMap<String, SoftReference> cache = new ConcurrentHashMap<>();
-
     public static AtomicInteger hits = new AtomicInteger();
     public static AtomicInteger misses = new AtomicInteger();
     public static AtomicInteger keyHitObjectMiss = new AtomicInteger();
+    public static AtomicInteger negativeHits = new AtomicInteger();
+    public static AtomicInteger indexHits = new AtomicInteger();
+    public static AtomicInteger indexMisses = new AtomicInteger();
+
+    public static long negativeTtlMillis = 5_000;
+    public static int maxNegativeEntries = 10_000;
 
-    public static Object get(String key)
+    public static boolean isCached(DBMap dbMap)
     {
-        if (cache.containsKey(key))
-        {
-            SoftReference softReference = cache.get(key);
+        return EOI.enableCache && dbMap.getCacheRegion().enabled;
+    }
+
+    /**
+     * Off-heap entries are decoded on every access until they are promoted on-heap.
+     */
+    public static Object get(CacheKey key)
+    {
+        CacheRegion region = key.dbMap.getCacheRegion();
+        if (!region.enabled)
+            return null;
+
+        CacheTransaction cacheTransaction = CacheTransaction.getActive();
+        if (cacheTransaction != null && cacheTransaction.isStaged(key))
+            return cacheTransaction.getStaged(key);
 
-            if (softReference.get() != null)
+        CacheRegion.Entry entry = region.getEntry(key);
+        if (entry != null)
+        {
+            Object object = entry.reference.get();
+            if (object != null)
             {
                 hits.incrementAndGet();
-                return softReference.get();
+                return object;
             }
-            else
+
+            keyHitObjectMiss.incrementAndGet();
+            region.remove(key, entry);
+        }
+
+        if (OffHeapCache.enabled)
+        {
+            Object object = OffHeapCache.get(key);
+            if (object != null)
             {
-                keyHitObjectMiss.incrementAndGet();
-                cache.remove(key);
-                return null;
+                hits.incrementAndGet();
+                if (OffHeapCache.isHot(key))
+                {
+                    region.put(key, object);
+                    OffHeapCache.promotions.incrementAndGet();
+                }
+                return object;
             }
         }
-        else
-        {
+
+        if (entry == null)
             misses.incrementAndGet();
-            return null;
-        }
+        return null;
     }
 
     public static void set(Object object)
     {
-        cache.put(object.toString(), new SoftReference(object));
+        CacheKey key = CacheKey.fromObject(object);
+        if (key != null)
+            set(key, object);
+    }
+
+    /**
+     * Inside a transaction the write is staged until commit.
+     */
+    public static void set(CacheKey key, Object object)
+    {
+        CacheRegion region = key.dbMap.getCacheRegion();
+        if (!region.enabled)
+            return;
+
+        CacheTransaction cacheTransaction = CacheTransaction.getActive();
+        if (cacheTransaction != null)
+        {
+            cacheTransaction.stageSet(key, object);
+            return;
+        }
+
+        if (OffHeapCache.enabled)
+        {
+            long expiresAt = region.ttlMillis > 0 ? System.currentTimeMillis() + region.ttlMillis : 0;
+            OffHeapCache.put(key, object, expiresAt);
+            region.putIfPresent(key, object);
+            region.removeAbsent(key);
+            return;
+        }
+
+        region.put(key, object);
+        region.removeAbsent(key);
     }
 
     public static void unset(Object object)
     {
-        cache.remove(object.toString());
+        CacheKey key = CacheKey.fromObject(object);
+        if (key != null)
+            unset(key);
     }
 
-    public static int getKeysWithNoValue()
+    /**
+     * Inside a transaction the eviction is staged until commit.
+     */
+    public static void unset(CacheKey key)
     {
-        int count = 0;
-        for (String key : cache.keySet())
+        CacheTransaction cacheTransaction = CacheTransaction.getActive();
+        if (cacheTransaction != null)
+        {
+            cacheTransaction.stageUnset(key);
+            return;
+        }
+
+        key.dbMap.getCacheRegion().remove(key);
+        key.dbMap.getCacheRegion().removeAbsent(key);
+        if (OffHeapCache.enabled)
+            OffHeapCache.remove(key);
+    }
+
+    /**
+     * True if a recent primary key lookup found no row for this key. Counted in negativeHits, not hits.
+     */
+    public static boolean isKnownAbsent(CacheKey key)
+    {
+        CacheRegion region = key.dbMap.getCacheRegion();
+        if (!region.enabled || !region.isAbsent(key))
+            return false;
+
+        negativeHits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Remembers, for negativeTtlMillis, that no row exists for this key.
+     */
+    public static void setAbsent(CacheKey key)
+    {
+        CacheRegion region = key.dbMap.getCacheRegion();
+        if (region.enabled && negativeTtlMillis > 0 && !EOI.isInTransaction())
+            region.putAbsent(key, negativeTtlMillis, maxNegativeEntries);
+    }
+
+    public static void unsetAbsent(CacheKey key)
+    {
+        key.dbMap.getCacheRegion().removeAbsent(key);
+    }
+
+    public static void clearAbsent(DBMap dbMap)
+    {
+        dbMap.getCacheRegion().clearAbsent();
+    }
+
+    /**
+     * @return null when the lookup has to go to the database
+     */
+    static List<Object> findByIndex(DBMap dbMap, DBMapField field, Object value)
+    {
+        CacheIndex index = getIndex(dbMap, field);
+        if (index == null)
+            return null;
+
+        Object expected = CacheKey.normalize(field, value);
+        return resolve(dbMap.getCacheRegion(), index.get(value), object -> expected.equals(index.getIndexedValue(object)));
+    }
+
+    /**
+     * @param from inclusive, null for no lower bound
+     * @param to exclusive, null for no upper bound
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> findByIndexRange(DBMap dbMap, DBMapField field, Object from, Object to)
+    {
+        CacheIndex index = getIndex(dbMap, field);
+        if (index == null || !index.sorted)
+            return null;
+
+        Comparable<Object> lower = (Comparable<Object>) CacheKey.normalize(field, from);
+        Comparable<Object> upper = (Comparable<Object>) CacheKey.normalize(field, to);
+        return resolve(dbMap.getCacheRegion(), index.getRange(from, to), object -> {
+            Object value = index.getIndexedValue(object);
+            return value != null && (lower == null || lower.compareTo(value) <= 0) && (upper == null || upper.compareTo(value) > 0);
+        });
+    }
+
+    private static CacheIndex getIndex(DBMap dbMap, DBMapField field)
+    {
+        CacheRegion region = dbMap.getCacheRegion();
+        CacheIndex index = region.getIndex(field.fieldName);
+        if (index == null || !region.enabled || !region.isComplete() || CacheTransaction.getActive() != null)
         {
-            SoftReference value = cache.get(key);
-            if (value.get() == null)
-                count++;
+            indexMisses.incrementAndGet();
+            return null;
+        }
+        return index;
+    }
+
+    // objects can be changed in place without going through EOI.update, so each match is checked against the object
+    private static List<Object> resolve(CacheRegion region, List<CacheKey> keys, Predicate<Object> matches)
+    {
+        List<Object> results = new ArrayList<>();
+        for (CacheKey key : keys)
+        {
+            CacheRegion.Entry entry = region.getEntry(key);
+            Object object = entry == null ? null : entry.reference.get();
+            if (object == null)
+            {
+                if (entry != null)
+                    region.remove(key, entry);
+                region.markIncomplete();
+                indexMisses.incrementAndGet();
+                return null;
+            }
+            if (matches.test(object))
+                results.add(object);
         }
+        indexHits.incrementAndGet();
+        return results;
+    }
+
+    public static int size()
+    {
+        int size = 0;
+        for (DBMap dbMap : DBMap.dbMaps)
+            size += dbMap.getCacheRegion().size();
+        return size;
+    }
+
+    public static void clear()
+    {
+        for (DBMap dbMap : DBMap.dbMaps)
+            dbMap.getCacheRegion().clear();
+        OffHeapCache.clear();
+    }
+
+    public static int getKeysWithNoValue()
+    {
+        int count = 0;
+        for (DBMap dbMap : DBMap.dbMaps)
+            count += dbMap.getCacheRegion().getKeysWithNoValue();
         return count;
     }
 }
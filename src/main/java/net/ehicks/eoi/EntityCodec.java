@@ -0,0 +1,167 @@
+package net.ehicks.eoi;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact binary encoding of an entity: a null bitmap followed by each non-null value in DBMap field order.
+ */
+public class EntityCodec
+{
+    public static byte[] encode(DBMap dbMap, Object object)
+    {
+        List<DBMapField> fields = dbMap.fields;
+        Object[] values = new Object[fields.size()];
+        int size = (fields.size() + 7) / 8;
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = fields.get(i).getValue(object);
+            if (values[i] instanceof String)
+                values[i] = ((String) values[i]).getBytes(StandardCharsets.UTF_8);
+            size += getEncodedSize(fields.get(i), values[i]);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        byte[] nulls = new byte[(fields.size() + 7) / 8];
+        for (int i = 0; i < values.length; i++)
+            if (values[i] == null)
+                nulls[i / 8] |= 1 << (i % 8);
+        buffer.put(nulls);
+
+        for (int i = 0; i < values.length; i++)
+            if (values[i] != null)
+                putValue(buffer, fields.get(i), values[i]);
+
+        return buffer.array();
+    }
+
+    public static Object decode(DBMap dbMap, ByteBuffer buffer) throws ReflectiveOperationException
+    {
+        List<DBMapField> fields = dbMap.fields;
+        byte[] nulls = new byte[(fields.size() + 7) / 8];
+        buffer.get(nulls);
+
+        Object object = dbMap.constructor.newInstance();
+        for (int i = 0; i < fields.size(); i++)
+        {
+            if ((nulls[i / 8] & (1 << (i % 8))) != 0)
+                continue;
+
+            DBMapField field = fields.get(i);
+            field.getSetter().invoke(object, getValue(buffer, field));
+        }
+        return object;
+    }
+
+    public static int getEncodedSize(DBMap dbMap, Object object)
+    {
+        int size = (dbMap.fields.size() + 7) / 8;
+        for (DBMapField field : dbMap.fields)
+        {
+            Object value = field.getValue(object);
+            if (value instanceof String)
+                size += 4 + getUtf8Length((String) value);
+            else
+                size += getEncodedSize(field, value);
+        }
+        return size;
+    }
+
+    // the UTF-8 length of value without encoding it
+    static int getUtf8Length(String value)
+    {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+                length += 1;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c))
+                length += 1; // unpaired, the encoder writes '?'
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    static int getEncodedSize(DBMapField field, Object value)
+    {
+        if (value == null)
+            return 0;
+        if (field.type.equals(DBMapField.STRING)) return 4 + ((byte[]) value).length;
+        if (field.type.equals(DBMapField.BLOB)) return 4 + ((byte[]) value).length;
+        if (field.type.equals(DBMapField.INTEGER)) return 4;
+        if (field.type.equals(DBMapField.LONG)) return 8;
+        if (field.type.equals(DBMapField.DECIMAL)) return 8 + ((BigDecimal) value).unscaledValue().bitLength() / 8 + 1;
+        if (field.type.equals(DBMapField.TIMESTAMP)) return 8;
+        if (field.type.equals(DBMapField.BOOLEAN)) return 1;
+        return 0;
+    }
+
+    static void putValue(ByteBuffer buffer, DBMapField field, Object value)
+    {
+        if (field.type.equals(DBMapField.STRING) || field.type.equals(DBMapField.BLOB))
+        {
+            byte[] bytes = value instanceof String ? ((String) value).getBytes(StandardCharsets.UTF_8) : (byte[]) value;
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+        if (field.type.equals(DBMapField.INTEGER))
+            buffer.putInt((Integer) value);
+        if (field.type.equals(DBMapField.LONG))
+            buffer.putLong((Long) value);
+        if (field.type.equals(DBMapField.DECIMAL))
+        {
+            BigDecimal decimal = (BigDecimal) value;
+            byte[] unscaled = decimal.unscaledValue().toByteArray();
+            buffer.putInt(decimal.scale());
+            buffer.putInt(unscaled.length);
+            buffer.put(unscaled);
+        }
+        if (field.type.equals(DBMapField.TIMESTAMP))
+            buffer.putLong(((Date) value).getTime());
+        if (field.type.equals(DBMapField.BOOLEAN))
+            buffer.put((byte) ((Boolean) value ? 1 : 0));
+    }
+
+    static Object getValue(ByteBuffer buffer, DBMapField field)
+    {
+        if (field.type.equals(DBMapField.STRING))
+            return new String(getBytes(buffer), StandardCharsets.UTF_8);
+        if (field.type.equals(DBMapField.BLOB))
+            return getBytes(buffer);
+        if (field.type.equals(DBMapField.INTEGER))
+            return buffer.getInt();
+        if (field.type.equals(DBMapField.LONG))
+            return buffer.getLong();
+        if (field.type.equals(DBMapField.DECIMAL))
+        {
+            int scale = buffer.getInt();
+            return new BigDecimal(new BigInteger(getBytes(buffer)), scale);
+        }
+        if (field.type.equals(DBMapField.TIMESTAMP))
+            return new Timestamp(buffer.getLong());
+        if (field.type.equals(DBMapField.BOOLEAN))
+            return buffer.get() == 1;
+        return null;
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,123 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counts what ResultSetParser materializes per entity and per statement fingerprint, and the bytes allocated per
+ * result where the JVM supports it.
+ */
+public class HydrationMetrics
+{
+    public static boolean trackAllocations = true;
+
+    private static final ConcurrentMap<String, Group> entityGroups = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Group> queryGroups = new ConcurrentHashMap<>();
+    private static final com.sun.management.ThreadMXBean threadMXBean = getThreadMXBean();
+
+    static class Tally
+    {
+        long rows;
+        long columns;
+        long blobBytes;
+        long cacheShortCircuits;
+        private final long allocatedAtStart;
+
+        Tally(long allocatedAtStart)
+        {
+            this.allocatedAtStart = allocatedAtStart;
+        }
+    }
+
+    private static class Group
+    {
+        final Counter rows;
+        final Counter columns;
+        final Counter blobBytes;
+        final Counter cacheShortCircuits;
+        final Histogram allocatedBytes;
+
+        Group(String suffix)
+        {
+            MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+            rows = metricRegistry.counter("eoi.hydration.rows" + suffix);
+            columns = metricRegistry.counter("eoi.hydration.columns" + suffix);
+            blobBytes = metricRegistry.counter("eoi.hydration.blobBytes" + suffix);
+            cacheShortCircuits = metricRegistry.counter("eoi.hydration.cacheShortCircuits" + suffix);
+            allocatedBytes = Metrics.getBoundedHistogram("eoi.hydration.allocatedBytes" + suffix);
+        }
+
+        void add(Tally tally, long allocated)
+        {
+            rows.inc(tally.rows);
+            columns.inc(tally.columns);
+            blobBytes.inc(tally.blobBytes);
+            cacheShortCircuits.inc(tally.cacheShortCircuits);
+            if (allocated >= 0)
+                allocatedBytes.update(allocated);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean()
+    {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean))
+            return null;
+
+        com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!sunThreadMXBean.isThreadAllocatedMemorySupported() || !sunThreadMXBean.isThreadAllocatedMemoryEnabled())
+            return null;
+        return sunThreadMXBean;
+    }
+
+    private static long getAllocatedBytes()
+    {
+        if (!trackAllocations || threadMXBean == null)
+            return -1;
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static Tally start()
+    {
+        return new Tally(getAllocatedBytes());
+    }
+
+    /**
+     * @param dbMap null for rows of unmapped tables, which are only recorded per fingerprint
+     */
+    static void record(Tally tally, DBMap dbMap, String fingerprint)
+    {
+        long allocated = -1;
+        if (tally.allocatedAtStart >= 0)
+        {
+            long allocatedNow = getAllocatedBytes();
+            if (allocatedNow >= 0)
+                allocated = allocatedNow - tally.allocatedAtStart;
+        }
+
+        if (dbMap != null)
+            entityGroups.computeIfAbsent(".entity." + dbMap.className, Group::new).add(tally, allocated);
+
+        Group queryGroup = queryGroups.get(fingerprint);
+        if (queryGroup == null)
+        {
+            if (queryGroups.size() >= Metrics.maxFingerprints)
+                fingerprint = QueryTiming.OTHER;
+            queryGroup = queryGroups.computeIfAbsent(fingerprint, key -> new Group(".query." + key));
+        }
+        queryGroup.add(tally, allocated);
+    }
+
+    static void reset()
+    {
+        entityGroups.clear();
+        queryGroups.clear();
+        Metrics.getMetricRegistry().removeMatching((name, metric) -> name.startsWith("eoi.hydration."));
+    }
+}
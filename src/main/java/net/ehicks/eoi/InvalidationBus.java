@@ -0,0 +1,15 @@
+package net.ehicks.eoi;
+
+import java.util.Collection;
+
+/**
+ * Carries cache invalidations between nodes that each run their own EOICache. Install with EOI.setInvalidationBus.
+ */
+public interface InvalidationBus
+{
+    void start();
+
+    void publish(Collection<CacheKey> keys);
+
+    void stop();
+}
@@ -0,0 +1,23 @@
+package net.ehicks.eoi;
+
+import java.util.List;
+
+/**
+ * One page from Query.seek. nextToken is null on the last page.
+ */
+public class KeysetPage<T>
+{
+    public List<T> rows;
+    public String nextToken;
+
+    public KeysetPage(List<T> rows, String nextToken)
+    {
+        this.rows = rows;
+        this.nextToken = nextToken;
+    }
+
+    public boolean hasNext()
+    {
+        return nextToken != null;
+    }
+}
@@ -4,19 +4,70 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.jmx.JmxReporter;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Metrics
 {
     private static MetricRegistry metricRegistry = new MetricRegistry();
+    private static JmxReporter jmxReporter;
+
+    public static String jmxDomain = "net.ehicks.eoi";
+    // statements with timers and histograms of their own, later ones share the fingerprint "other"
+    public static int maxFingerprints = 100;
+    // samples kept per statement timer and histogram, the default reservoir would keep up to 1028 each
+    public static int reservoirSize = 256;
+
+    // EOICache keeps plain AtomicIntegers, read them through gauges so reporters see them
+    static
+    {
+        metricRegistry.register("eoi.cache.hits", (Gauge<Integer>) () -> EOICache.hits.get());
+        metricRegistry.register("eoi.cache.misses", (Gauge<Integer>) () -> EOICache.misses.get());
+        metricRegistry.register("eoi.cache.keyHitObjectMiss", (Gauge<Integer>) () -> EOICache.keyHitObjectMiss.get());
+        metricRegistry.register("eoi.cache.negativeHits", (Gauge<Integer>) () -> EOICache.negativeHits.get());
+        metricRegistry.register("eoi.cache.indexHits", (Gauge<Integer>) () -> EOICache.indexHits.get());
+        metricRegistry.register("eoi.cache.indexMisses", (Gauge<Integer>) () -> EOICache.indexMisses.get());
+    }
 
     public static MetricRegistry getMetricRegistry()
     {
         return metricRegistry;
     }
 
+    static Timer getBoundedTimer(String name)
+    {
+        return metricRegistry.timer(name, () -> new Timer(new SlidingWindowReservoir(reservoirSize)));
+    }
+
+    static Histogram getBoundedHistogram(String name)
+    {
+        return metricRegistry.histogram(name, () -> new Histogram(new SlidingWindowReservoir(reservoirSize)));
+    }
+
+    /**
+     * Publishes every metric in the registry as an MBean under jmxDomain.
+     */
+    public static synchronized void startJmxReporter()
+    {
+        stopJmxReporter();
+        jmxReporter = JmxReporter.forRegistry(metricRegistry).inDomain(jmxDomain).build();
+        jmxReporter.start();
+    }
+
+    public static synchronized void stopJmxReporter()
+    {
+        if (jmxReporter != null)
+        {
+            jmxReporter.stop();
+            jmxReporter = null;
+        }
+    }
+
     /*
         <pool name>.pool.Wait
         A Timer instance collecting how long requesting threads to getConnection() are waiting for a connection (or timeout exception) from the pool.
@@ -65,4 +116,19 @@ public class Metrics
 
         return metrics;
     }
+
+    public static List<QueryStatistics.Entry> getQueryStatistics()
+    {
+        return QueryStatistics.getSnapshot();
+    }
+
+    public static List<QueryStatistics.Entry> getQueryStatistics(int limit)
+    {
+        return QueryStatistics.getTop(limit);
+    }
+
+    public static void resetQueryStatistics()
+    {
+        QueryStatistics.reset();
+    }
 }
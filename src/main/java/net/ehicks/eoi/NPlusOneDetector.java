@@ -0,0 +1,131 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opt-in N+1 detection: counts select fingerprints run within a scope and reports the first to reach threshold.
+ * <br>WARN logs the caller, FAIL throws an IllegalStateException instead, meant for tests.
+ */
+public class NPlusOneDetector
+{
+    private static final Logger log = LoggerFactory.getLogger(NPlusOneDetector.class);
+
+    public enum Mode {WARN, FAIL}
+
+    public static int threshold = 10;
+    public static Mode mode = Mode.WARN;
+
+    private static final ThreadLocal<Scope> current = new ThreadLocal<>();
+    private static final Counter detected = Metrics.getMetricRegistry().counter("eoi.nPlusOne.detected");
+
+    public static class Scope implements AutoCloseable
+    {
+        private final int threshold;
+        private final Mode mode;
+        private final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        private final List<String> reports = Collections.synchronizedList(new ArrayList<>());
+        private final Scope previous;
+
+        private Scope(int threshold, Mode mode, Scope previous)
+        {
+            this.threshold = threshold;
+            this.mode = mode;
+            this.previous = previous;
+        }
+
+        /**
+         * Counts this thread's statements into the scope as well, until the returned scope is closed.
+         */
+        public Scope bind()
+        {
+            Scope binding = new Scope(threshold, mode, current.get())
+            {
+                @Override
+                void count(String fingerprint)
+                {
+                    Scope.this.count(fingerprint);
+                }
+            };
+            current.set(binding);
+            return binding;
+        }
+
+        void count(String fingerprint)
+        {
+            int count = counts.computeIfAbsent(fingerprint, key -> new AtomicInteger()).incrementAndGet();
+            if (count != threshold)
+                return;
+
+            String report = "Possible N+1: " + count + " runs of " + fingerprint + " from " + getCaller();
+            reports.add(report);
+            detected.inc();
+            if (mode == Mode.FAIL)
+                throw new IllegalStateException(report);
+            log.warn(report);
+        }
+
+        public Map<String, Integer> getCounts()
+        {
+            Map<String, Integer> snapshot = new HashMap<>();
+            counts.forEach((fingerprint, count) -> snapshot.put(fingerprint, count.get()));
+            return snapshot;
+        }
+
+        public List<String> getReports()
+        {
+            return new ArrayList<>(reports);
+        }
+
+        @Override
+        public void close()
+        {
+            if (previous != null)
+                current.set(previous);
+            else
+                current.remove();
+        }
+    }
+
+    public static Scope open()
+    {
+        return open(threshold, mode);
+    }
+
+    /**
+     * Opens a scope on this thread, nested inside any scope already open until closed.
+     */
+    public static Scope open(int threshold, Mode mode)
+    {
+        Scope scope = new Scope(threshold, mode, current.get());
+        current.set(scope);
+        return scope;
+    }
+
+    static void onStatement(String fingerprint)
+    {
+        Scope scope = current.get();
+        if (scope != null && fingerprint.startsWith("select"))
+            scope.count(fingerprint);
+    }
+
+    // the first frame outside of net.ehicks.eoi itself, entities and other callers count as application code
+    private static String getCaller()
+    {
+        String corePackage = NPlusOneDetector.class.getPackage().getName() + ".";
+        for (StackTraceElement frame : new Throwable().getStackTrace())
+        {
+            String className = frame.getClassName();
+            boolean core = className.startsWith(corePackage) && className.indexOf('.', corePackage.length()) == -1;
+            if (!core && !className.startsWith("java.") && !className.startsWith("sun.") && !className.startsWith("jdk."))
+                return frame.toString();
+        }
+        return "unknown";
+    }
+}
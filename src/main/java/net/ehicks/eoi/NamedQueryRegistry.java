@@ -0,0 +1,142 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SQL declared on entities with @NamedNativeQuery, run by name through EOI.executeNamedQuery.
+ * <br>Queries are registered by DBMap.loadDbMaps, so bad mappings and duplicate names fail at startup.
+ */
+public class NamedQueryRegistry
+{
+    private static final Logger log = LoggerFactory.getLogger(NamedQueryRegistry.class);
+
+    public static boolean validateOnLoad = false;
+
+    private static final Map<String, Definition> definitions = new ConcurrentHashMap<>();
+
+    static void register(DBMap dbMap, Class<?> beanClass)
+    {
+        List<NamedNativeQuery> namedQueries = new ArrayList<>();
+        NamedNativeQuery namedQuery = beanClass.getAnnotation(NamedNativeQuery.class);
+        if (namedQuery != null)
+            namedQueries.add(namedQuery);
+        NamedNativeQueries namedQueriesAnnotation = beanClass.getAnnotation(NamedNativeQueries.class);
+        if (namedQueriesAnnotation != null)
+            for (NamedNativeQuery query : namedQueriesAnnotation.value())
+                namedQueries.add(query);
+
+        for (NamedNativeQuery query : namedQueries)
+        {
+            Definition existing = definitions.get(query.name());
+            if (existing != null && existing.dbMap.clazz != dbMap.clazz)
+                throw new IllegalStateException("Named query " + query.name() + " is declared on both " + existing.dbMap.className + " and " + dbMap.className);
+            definitions.put(query.name(), new Definition(dbMap, query.name(), query.query()));
+        }
+    }
+
+    static void prepare()
+    {
+        for (Definition definition : definitions.values())
+        {
+            definition.plan = ResultPlan.forSQL(definition.queryString);
+            if (definition.plan.dbMap == null)
+                log.warn("Named query {} doesn't select from a mapped table, its rows will come back as Object[]", definition.name);
+        }
+
+        if (validateOnLoad && EOI.cp != null)
+            validate();
+    }
+
+    /**
+     * @throws IllegalStateException listing every query the database rejected
+     */
+    public static void validate()
+    {
+        List<String> failures = new ArrayList<>();
+        try (Connection connection = EOI.cp.getConnection())
+        {
+            for (Definition definition : definitions.values())
+            {
+                try (PreparedStatement preparedStatement = connection.prepareStatement(definition.queryString))
+                {
+                    // most drivers only parse the statement once asked to describe it
+                    preparedStatement.getMetaData();
+                }
+                catch (SQLException e)
+                {
+                    failures.add(definition.name + ": " + e.getMessage());
+                }
+            }
+        }
+        catch (SQLException e)
+        {
+            log.error(e.getMessage(), e);
+            return;
+        }
+
+        if (!failures.isEmpty())
+            throw new IllegalStateException("Invalid named queries:\n" + String.join("\n", failures));
+        log.info("Validated {} named queries", definitions.size());
+    }
+
+    static Definition get(String name, List<Object> args)
+    {
+        Definition definition = definitions.get(name);
+        if (definition == null)
+            throw new IllegalArgumentException("No named query " + name);
+        if (args.size() != definition.parameterCount)
+            throw new IllegalArgumentException("Named query " + name + " takes " + definition.parameterCount + " args, got " + args.size());
+        return definition;
+    }
+
+    public static boolean contains(String name)
+    {
+        return definitions.containsKey(name);
+    }
+
+    static class Definition
+    {
+        final DBMap dbMap;
+        final String name;
+        final String queryString;
+        final int parameterCount;
+        final Timer timer;
+        ResultPlan plan;
+
+        Definition(DBMap dbMap, String name, String queryString)
+        {
+            this.dbMap = dbMap;
+            this.name = name;
+            this.queryString = queryString;
+            this.parameterCount = countParameters(queryString);
+            this.timer = Metrics.getMetricRegistry().timer("eoi.namedQuery." + name);
+        }
+
+        // placeholders inside string literals don't count
+        private static int countParameters(String queryString)
+        {
+            int count = 0;
+            boolean inLiteral = false;
+            for (char c : queryString.toCharArray())
+            {
+                if (c == '\'')
+                    inLiteral = !inLiteral;
+                else if (c == '?' && !inLiteral)
+                    count++;
+            }
+            return count;
+        }
+    }
+}
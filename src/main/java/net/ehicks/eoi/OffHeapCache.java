@@ -0,0 +1,274 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Second EOICache tier holding EntityCodec encodings in direct ByteBuffer slabs, up to maxBytes.
+ * <br>When every slab is full the oldest is recycled, dropping whatever it held.
+ */
+public class OffHeapCache
+{
+    private static final Logger log = LoggerFactory.getLogger(OffHeapCache.class);
+
+    public static boolean enabled = false;
+    public static long maxBytes = 256L * 1024 * 1024;
+    public static int slabBytes = 16 * 1024 * 1024;
+    public static int promoteThreshold = 2;
+
+    public static AtomicLong hits = new AtomicLong();
+    public static AtomicLong misses = new AtomicLong();
+    public static AtomicLong promotions = new AtomicLong();
+    public static AtomicLong recycledSlabs = new AtomicLong();
+
+    private static final ConcurrentMap<CacheKey, Location> index = new ConcurrentHashMap<>();
+    private static final Object allocationLock = new Object();
+    private static volatile Slab[] slabs = new Slab[0];
+    private static int currentSlab = -1;
+
+    static
+    {
+        MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+        metricRegistry.register("eoi.offHeap.entries", (Gauge<Integer>) index::size);
+        metricRegistry.register("eoi.offHeap.allocatedBytes", (Gauge<Long>) OffHeapCache::getAllocatedBytes);
+        metricRegistry.register("eoi.offHeap.hits", (Gauge<Long>) hits::get);
+        metricRegistry.register("eoi.offHeap.misses", (Gauge<Long>) misses::get);
+        metricRegistry.register("eoi.offHeap.promotions", (Gauge<Long>) promotions::get);
+    }
+
+    public static void configure(long maxBytes, int slabBytes)
+    {
+        synchronized (allocationLock)
+        {
+            OffHeapCache.maxBytes = maxBytes;
+            OffHeapCache.slabBytes = slabBytes;
+            slabs = new Slab[(int) Math.max(1, maxBytes / slabBytes)];
+            currentSlab = -1;
+            index.clear();
+            enabled = true;
+        }
+    }
+
+    /**
+     * @param expiresAt epoch millis after which the entry is ignored, 0 for no expiry
+     */
+    public static void put(CacheKey key, Object object, long expiresAt)
+    {
+        byte[] encoded = EntityCodec.encode(key.dbMap, object);
+        if (encoded.length > slabBytes)
+        {
+            index.remove(key);
+            return;
+        }
+
+        synchronized (allocationLock)
+        {
+            if (slabs.length == 0)
+                slabs = new Slab[(int) Math.max(1, maxBytes / slabBytes)];
+
+            Slab slab = currentSlab == -1 ? null : slabs[currentSlab];
+            if (slab == null || slab.position + encoded.length > slabBytes)
+                slab = nextSlab();
+
+            Location location = new Location(currentSlab, slab.generation, slab.position, encoded.length, expiresAt);
+            ByteBuffer target = slab.buffer.duplicate();
+            target.position(slab.position);
+            target.put(encoded);
+            slab.position += encoded.length;
+            slab.keys.add(key);
+            index.put(key, location);
+        }
+    }
+
+    private static Slab nextSlab()
+    {
+        currentSlab = (currentSlab + 1) % slabs.length;
+        Slab slab = slabs[currentSlab];
+        if (slab == null)
+        {
+            slab = new Slab(ByteBuffer.allocateDirect(slabBytes));
+            slabs[currentSlab] = slab;
+            return slab;
+        }
+
+        slab.lock.writeLock().lock();
+        try
+        {
+            slab.generation++;
+            slab.position = 0;
+        }
+        finally
+        {
+            slab.lock.writeLock().unlock();
+        }
+
+        // keys rewritten since moved to a newer slab, only drop the ones still pointing here
+        for (CacheKey key : slab.keys)
+        {
+            Location location = index.get(key);
+            if (location != null && location.slab == currentSlab && location.generation != slab.generation)
+                index.remove(key, location);
+        }
+        slab.keys.clear();
+        recycledSlabs.incrementAndGet();
+        return slab;
+    }
+
+    public static Object get(CacheKey key)
+    {
+        Location location = index.get(key);
+        Slab[] slabs = OffHeapCache.slabs;
+        Slab slab = location == null || location.slab >= slabs.length ? null : slabs[location.slab];
+        if (slab == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (location.expiresAt != 0 && System.currentTimeMillis() >= location.expiresAt)
+        {
+            index.remove(key, location);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        byte[] encoded = new byte[location.length];
+        slab.lock.readLock().lock();
+        try
+        {
+            if (slab.generation != location.generation)
+            {
+                index.remove(key, location);
+                misses.incrementAndGet();
+                return null;
+            }
+            ByteBuffer source = slab.buffer.duplicate();
+            source.position(location.offset);
+            source.get(encoded);
+        }
+        finally
+        {
+            slab.lock.readLock().unlock();
+        }
+
+        try
+        {
+            Object object = EntityCodec.decode(key.dbMap, ByteBuffer.wrap(encoded));
+            hits.incrementAndGet();
+            location.accesses.incrementAndGet();
+            return object;
+        }
+        catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+            index.remove(key, location);
+            return null;
+        }
+    }
+
+    public static void forEachEncoded(DBMap dbMap, BiConsumer<CacheKey, byte[]> consumer)
+    {
+        long now = System.currentTimeMillis();
+        Slab[] slabs = OffHeapCache.slabs;
+        for (Map.Entry<CacheKey, Location> entry : index.entrySet())
+        {
+            Location location = entry.getValue();
+            if (entry.getKey().dbMap != dbMap || location.slab >= slabs.length || slabs[location.slab] == null)
+                continue;
+            if (location.expiresAt != 0 && now >= location.expiresAt)
+                continue;
+
+            Slab slab = slabs[location.slab];
+            byte[] encoded = new byte[location.length];
+            slab.lock.readLock().lock();
+            try
+            {
+                if (slab.generation != location.generation)
+                    continue;
+                ByteBuffer source = slab.buffer.duplicate();
+                source.position(location.offset);
+                source.get(encoded);
+            }
+            finally
+            {
+                slab.lock.readLock().unlock();
+            }
+            consumer.accept(entry.getKey(), encoded);
+        }
+    }
+
+    public static boolean isHot(CacheKey key)
+    {
+        Location location = index.get(key);
+        return location != null && location.accesses.get() >= promoteThreshold;
+    }
+
+    public static void remove(CacheKey key)
+    {
+        index.remove(key);
+    }
+
+    public static void clear()
+    {
+        index.clear();
+    }
+
+    public static int size()
+    {
+        return index.size();
+    }
+
+    public static long getAllocatedBytes()
+    {
+        long allocated = 0;
+        for (Slab slab : slabs)
+            if (slab != null)
+                allocated += slabBytes;
+        return allocated;
+    }
+
+    private static class Slab
+    {
+        private final ByteBuffer buffer;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<CacheKey> keys = new ArrayList<>(); // guarded by allocationLock
+        private volatile int generation;
+        private int position;
+
+        private Slab(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Location
+    {
+        private final int slab;
+        private final int generation;
+        private final int offset;
+        private final int length;
+        private final long expiresAt;
+        private final AtomicInteger accesses = new AtomicInteger();
+
+        private Location(int slab, int generation, int offset, int length, long expiresAt)
+        {
+            this.expiresAt = expiresAt;
+            this.slab = slab;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package net.ehicks.eoi;
+
+import java.util.List;
+
+/**
+ * When exactTotal is false the total came from ApproximateCount and may be slightly off.
+ */
+public class Page<T>
+{
+    public List<T> rows;
+    public long total;
+    public boolean exactTotal;
+
+    public Page(List<T> rows, long total, boolean exactTotal)
+    {
+        this.rows = rows;
+        this.total = total;
+        this.exactTotal = exactTotal;
+    }
+}
@@ -0,0 +1,173 @@
+package net.ehicks.eoi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invalidation bus over a change-log table, for databases without a notification channel (H2, SQL Server).
+ * <br>Ids skipped over by a poll are polled again until they show up or gapTimeoutMillis passes.
+ */
+public class PollingInvalidationBus extends AbstractInvalidationBus
+{
+    private static final Logger log = LoggerFactory.getLogger(PollingInvalidationBus.class);
+
+    public static long gapTimeoutMillis = 60 * 1000;
+    public static int maxGaps = 10_000;
+
+    private final String tableName;
+    private final long pollMillis;
+    private final long retentionMillis;
+    private ScheduledExecutorService executor;
+    private long lastSeenId;
+    private long lastPurge;
+    private final TreeMap<Long, Long> gaps = new TreeMap<>(); // id -> when it was first skipped
+
+    public PollingInvalidationBus()
+    {
+        this("eoi_cache_changes", 1000, 10 * 60 * 1000);
+    }
+
+    public PollingInvalidationBus(String tableName, long pollMillis, long retentionMillis)
+    {
+        this.tableName = tableName;
+        this.pollMillis = pollMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    @Override
+    public void start()
+    {
+        if (!EOI.isTableExists(tableName))
+            EOI.executeUpdate(getCreateTableStatement());
+
+        try (Connection connection = EOI.cp.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select max(id) from " + tableName))
+        {
+            if (resultSet.next())
+                lastSeenId = resultSet.getLong(1);
+        }
+        catch (SQLException e)
+        {
+            log.error(e.getMessage(), e);
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "eoi-invalidation-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            flush();
+            poll();
+        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        if (executor != null)
+            executor.shutdownNow();
+        flush();
+    }
+
+    private String getCreateTableStatement()
+    {
+        String id = "bigint auto_increment primary key";
+        String timestamp = "timestamp";
+        if (EOI.dialect.equals(Dialect.POSTGRES))
+            id = "bigserial primary key";
+        if (EOI.dialect.equals(Dialect.SQL_SERVER))
+        {
+            id = "bigint identity(1,1) primary key";
+            timestamp = "datetime";
+        }
+
+        return "create table " + tableName + " (id " + id + ", node_id varchar(64) not null, cache_key varchar(1024) not null, created_on " + timestamp + " not null);";
+    }
+
+    @Override
+    protected void send(List<String> encodedKeys) throws SQLException
+    {
+        String insert = "insert into " + tableName + " (node_id, cache_key, created_on) values (?,?,?)";
+        try (Connection connection = EOI.cp.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(insert))
+        {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            for (String encodedKey : encodedKeys)
+            {
+                preparedStatement.setString(1, nodeId);
+                preparedStatement.setString(2, encodedKey);
+                preparedStatement.setTimestamp(3, now);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+    }
+
+    /**
+     * Public so tests can drive it without waiting on the schedule.
+     */
+    public synchronized void poll()
+    {
+        long now = System.currentTimeMillis();
+        gaps.values().removeIf(skippedOn -> now - skippedOn > gapTimeoutMillis);
+
+        String select = "select id, node_id, cache_key from " + tableName + " where id > ? order by id";
+        try (Connection connection = EOI.cp.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(select))
+        {
+            preparedStatement.setLong(1, gaps.isEmpty() ? lastSeenId : gaps.firstKey() - 1);
+            try (ResultSet resultSet = preparedStatement.executeQuery())
+            {
+                while (resultSet.next())
+                {
+                    long id = resultSet.getLong(1);
+                    if (id <= lastSeenId)
+                    {
+                        // rows between the gaps were already received
+                        if (gaps.remove(id) == null)
+                            continue;
+                    }
+                    else
+                    {
+                        for (long skipped = Math.max(lastSeenId + 1, id - maxGaps); skipped < id; skipped++)
+                            gaps.put(skipped, now);
+                        lastSeenId = id;
+                    }
+                    receive(resultSet.getString(2), resultSet.getString(3));
+                }
+            }
+
+            Iterator<Map.Entry<Long, Long>> oldest = gaps.entrySet().iterator();
+            while (gaps.size() > maxGaps)
+            {
+                oldest.next();
+                oldest.remove();
+            }
+
+            if (System.currentTimeMillis() - lastPurge > retentionMillis)
+            {
+                try (PreparedStatement purge = connection.prepareStatement("delete from " + tableName + " where created_on < ?"))
+                {
+                    purge.setTimestamp(1, new Timestamp(System.currentTimeMillis() - retentionMillis));
+                    purge.executeUpdate();
+                }
+                lastPurge = System.currentTimeMillis();
+            }
+        }
+        catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+        }
+    }
+}
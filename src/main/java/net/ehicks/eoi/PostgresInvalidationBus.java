@@ -0,0 +1,144 @@
+package net.ehicks.eoi;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Invalidation bus over Postgres LISTEN/NOTIFY, listening on its own connection outside the pool.
+ */
+public class PostgresInvalidationBus extends AbstractInvalidationBus
+{
+    private static final Logger log = LoggerFactory.getLogger(PostgresInvalidationBus.class);
+    static final int MAX_PAYLOAD_BYTES = 7900;
+
+    private final String channel;
+    private final int pollMillis;
+    private volatile boolean running;
+    private Thread listener;
+
+    public PostgresInvalidationBus()
+    {
+        this("eoi_cache_invalidation", 500);
+    }
+
+    public PostgresInvalidationBus(String channel, int pollMillis)
+    {
+        this.channel = channel;
+        this.pollMillis = pollMillis;
+    }
+
+    @Override
+    public void start()
+    {
+        running = true;
+        listener = new Thread(this::listen, "eoi-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void stop()
+    {
+        running = false;
+        if (listener != null)
+            listener.interrupt();
+        flush();
+    }
+
+    @Override
+    protected void send(List<String> encodedKeys) throws SQLException
+    {
+        try (Connection connection = EOI.cp.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement("select pg_notify(?, ?)"))
+        {
+            for (String payload : getPayloads(encodedKeys))
+                notify(preparedStatement, payload);
+        }
+    }
+
+    // nodeId followed by one key per line, split to stay under the NOTIFY payload limit
+    List<String> getPayloads(List<String> encodedKeys)
+    {
+        List<String> payloads = new ArrayList<>();
+        int nodeIdBytes = getByteLength(nodeId);
+        StringBuilder payload = new StringBuilder(nodeId);
+        int payloadBytes = nodeIdBytes;
+        for (String encodedKey : encodedKeys)
+        {
+            int keyBytes = getByteLength(encodedKey) + 1;
+            if (payloadBytes > nodeIdBytes && payloadBytes + keyBytes > MAX_PAYLOAD_BYTES)
+            {
+                payloads.add(payload.toString());
+                payload = new StringBuilder(nodeId);
+                payloadBytes = nodeIdBytes;
+            }
+            payload.append('\n').append(encodedKey);
+            payloadBytes += keyBytes;
+        }
+        payloads.add(payload.toString());
+        return payloads;
+    }
+
+    private void notify(PreparedStatement preparedStatement, String payload) throws SQLException
+    {
+        preparedStatement.setString(1, channel);
+        preparedStatement.setString(2, payload);
+        preparedStatement.execute();
+    }
+
+    private static int getByteLength(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private void listen()
+    {
+        while (running)
+        {
+            try (Connection connection = DriverManager.getConnection(EOI.connectionInfo.getDbConnectionString(true));
+                 Statement statement = connection.createStatement())
+            {
+                statement.execute("LISTEN " + channel);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running)
+                {
+                    flush();
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMillis);
+                    if (notifications == null)
+                        continue;
+
+                    for (PGNotification notification : notifications)
+                        handlePayload(notification.getParameter());
+                }
+            }
+            catch (Exception e)
+            {
+                if (!running)
+                    return;
+                log.error("Invalidation listener lost its connection, reconnecting: " + e.getMessage(), e);
+                try
+                {
+                    Thread.sleep(pollMillis);
+                }
+                catch (InterruptedException ie)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    public void handlePayload(String payload)
+    {
+        String[] lines = payload.split("\n");
+        for (int i = 1; i < lines.length; i++)
+            receive(lines[0], lines[i]);
+    }
+}
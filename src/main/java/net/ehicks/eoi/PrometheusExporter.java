@@ -0,0 +1,301 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.*;
+import com.codahale.metrics.Timer;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Renders Metrics.getMetricRegistry() in the Prometheus text format. Per statement, per entity and per pool names
+ * become labels, e.g. eoi.query.execute.&lt;fingerprint&gt; is eoi_query_execute_seconds{fingerprint="..."}.
+ */
+public class PrometheusExporter
+{
+    private static final Logger log = LoggerFactory.getLogger(PrometheusExporter.class);
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+    private static final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+    private static final ConcurrentMap<String, Family> familiesByMetric = new ConcurrentHashMap<>();
+    private static HttpServer server;
+
+    private static class Family
+    {
+        final String name;
+        final String type;
+        final double scale;
+        final ConcurrentMap<String, Sample> samples = new ConcurrentSkipListMap<>();
+
+        Family(String name, String type, double scale)
+        {
+            this.name = name;
+            this.type = type;
+            this.scale = scale;
+        }
+    }
+
+    private static class Sample
+    {
+        final String labels;
+        final Metric metric;
+
+        Sample(String labels, Metric metric)
+        {
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+
+    static
+    {
+        Metrics.getMetricRegistry().addListener(new MetricRegistryListener()
+        {
+            @Override public void onGaugeAdded(String name, Gauge<?> gauge) { add(name, gauge); }
+            @Override public void onGaugeRemoved(String name) { remove(name); }
+            @Override public void onCounterAdded(String name, Counter counter) { add(name, counter); }
+            @Override public void onCounterRemoved(String name) { remove(name); }
+            @Override public void onHistogramAdded(String name, Histogram histogram) { add(name, histogram); }
+            @Override public void onHistogramRemoved(String name) { remove(name); }
+            @Override public void onMeterAdded(String name, Meter meter) { add(name, meter); }
+            @Override public void onMeterRemoved(String name) { remove(name); }
+            @Override public void onTimerAdded(String name, Timer timer) { add(name, timer); }
+            @Override public void onTimerRemoved(String name) { remove(name); }
+        });
+    }
+
+    private static void add(String metricName, Metric metric)
+    {
+        String type;
+        String suffix = "";
+        double scale = 1;
+        if (metric instanceof Counter || metric instanceof Meter)
+        {
+            type = "counter";
+            suffix = "_total";
+        }
+        else if (metric instanceof Timer)
+        {
+            type = "summary";
+            suffix = "_seconds";
+            scale = 1d / 1_000_000_000;
+        }
+        else if (metric instanceof Histogram)
+            type = "summary";
+        else
+            type = "gauge";
+
+        String[] nameAndLabels = getFamilyNameAndLabels(metricName);
+        String familyName = nameAndLabels[0] + suffix;
+        double familyScale = scale;
+        Family family = families.computeIfAbsent(familyName, key -> new Family(familyName, type, familyScale));
+        // a family has one type, a clashing metric of another type is left out
+        if (!family.type.equals(type) || family.scale != scale)
+            return;
+
+        family.samples.put(nameAndLabels[1], new Sample(nameAndLabels[1], metric));
+        familiesByMetric.put(metricName, family);
+    }
+
+    private static void remove(String metricName)
+    {
+        Family family = familiesByMetric.remove(metricName);
+        if (family != null)
+            family.samples.remove(getFamilyNameAndLabels(metricName)[1]);
+    }
+
+    // [family name without type suffix, rendered labels]
+    static String[] getFamilyNameAndLabels(String metricName)
+    {
+        String eoiQuery = "eoi.query.";
+        if (metricName.startsWith(eoiQuery))
+        {
+            int phaseEnd = metricName.indexOf('.', eoiQuery.length());
+            if (phaseEnd > 0)
+                return new String[]{sanitize(metricName.substring(0, phaseEnd)), label("fingerprint", metricName.substring(phaseEnd + 1))};
+        }
+
+        String eoiHydration = "eoi.hydration.";
+        if (metricName.startsWith(eoiHydration))
+        {
+            for (String scope : new String[]{".entity.", ".query."})
+            {
+                int scopeStart = metricName.indexOf(scope, eoiHydration.length());
+                if (scopeStart > 0)
+                {
+                    String labelName = scope.equals(".entity.") ? "entity" : "fingerprint";
+                    return new String[]{sanitize(metricName.substring(0, scopeStart)), label(labelName, metricName.substring(scopeStart + scope.length()))};
+                }
+            }
+        }
+
+        String namedQuery = "eoi.namedQuery.";
+        if (metricName.startsWith(namedQuery))
+            return new String[]{"eoi_named_query", label("name", metricName.substring(namedQuery.length()))};
+
+        int pool = metricName.indexOf(".pool.");
+        if (pool > 0)
+            return new String[]{"hikaricp_pool_" + sanitize(metricName.substring(pool + ".pool.".length())), label("pool", metricName.substring(0, pool))};
+
+        return new String[]{sanitize(metricName), ""};
+    }
+
+    // camelCase and dotted names to snake_case, anything else outside [a-zA-Z0-9_] becomes _
+    private static String sanitize(String name)
+    {
+        StringBuilder sanitized = new StringBuilder();
+        for (int i = 0; i < name.length(); i++)
+        {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c))
+            {
+                if (i > 0 && Character.isLowerCase(name.charAt(i - 1)))
+                    sanitized.append('_');
+                sanitized.append(Character.toLowerCase(c));
+            }
+            else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_')
+                sanitized.append(c);
+            else if (sanitized.length() > 0 && sanitized.charAt(sanitized.length() - 1) != '_')
+                sanitized.append('_');
+        }
+        if (sanitized.length() == 0 || Character.isDigit(sanitized.charAt(0)))
+            sanitized.insert(0, '_');
+        return sanitized.toString();
+    }
+
+    private static String label(String name, String value)
+    {
+        StringBuilder escaped = new StringBuilder(value.length() + name.length() + 3);
+        escaped.append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+                escaped.append('\\').append(c);
+            else if (c == '\n')
+                escaped.append("\\n");
+            else
+                escaped.append(c);
+        }
+        return escaped.append('"').toString();
+    }
+
+    /**
+     * Writes every family with at least one metric, sorted by name.
+     */
+    public static void write(Writer writer) throws IOException
+    {
+        for (Family family : families.values())
+        {
+            if (family.samples.isEmpty())
+                continue;
+
+            writer.write("# TYPE ");
+            writer.write(family.name);
+            writer.write(' ');
+            writer.write(family.type);
+            writer.write('\n');
+            for (Sample sample : family.samples.values())
+                writeSample(writer, family, sample);
+        }
+        writer.flush();
+    }
+
+    private static void writeSample(Writer writer, Family family, Sample sample) throws IOException
+    {
+        Metric metric = sample.metric;
+        if (metric instanceof Counter)
+            writeLine(writer, family.name, sample.labels, null, ((Counter) metric).getCount());
+        else if (metric instanceof Meter)
+            writeLine(writer, family.name, sample.labels, null, ((Meter) metric).getCount());
+        else if (metric instanceof Sampling)
+        {
+            Snapshot snapshot = ((Sampling) metric).getSnapshot();
+            for (double quantile : QUANTILES)
+                writeLine(writer, family.name, sample.labels, "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) * family.scale);
+            writeLine(writer, family.name + "_count", sample.labels, null, ((Counting) metric).getCount());
+        }
+        else if (metric instanceof Gauge)
+        {
+            Object value = ((Gauge<?>) metric).getValue();
+            if (value instanceof Number)
+                writeLine(writer, family.name, sample.labels, null, ((Number) value).doubleValue());
+            else if (value instanceof Boolean)
+                writeLine(writer, family.name, sample.labels, null, (Boolean) value ? 1 : 0);
+        }
+    }
+
+    private static void writeLine(Writer writer, String name, String labels, String extraLabel, double value) throws IOException
+    {
+        writer.write(name);
+        if (!labels.isEmpty() || extraLabel != null)
+        {
+            writer.write('{');
+            writer.write(labels);
+            if (extraLabel != null)
+            {
+                if (!labels.isEmpty())
+                    writer.write(',');
+                writer.write(extraLabel);
+            }
+            writer.write('}');
+        }
+        writer.write(' ');
+        if (value == (long) value)
+            writer.write(Long.toString((long) value));
+        else
+            writer.write(Double.toString(value));
+        writer.write('\n');
+    }
+
+    public static HttpHandler getHandler()
+    {
+        return exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)))
+            {
+                write(writer);
+            }
+        };
+    }
+
+    /**
+     * Serves /metrics on localhost:port until stopServer, called by EOI.destroy.
+     */
+    public static void startServer(int port)
+    {
+        try
+        {
+            stopServer();
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", getHandler());
+            server.start();
+            log.info("Serving Prometheus metrics on {}", server.getAddress());
+        }
+        catch (IOException e)
+        {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    public static void stopServer()
+    {
+        if (server != null)
+        {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package net.ehicks.eoi;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Typed select builder over DBMap and DBMapField, conditions are and-ed together.
+ * <br>Unknown field names are an IllegalArgumentException.
+ */
+public class Query<T>
+{
+    public enum Op
+    {
+        EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="), LIKE("like");
+
+        final String sql;
+
+        Op(String sql)
+        {
+            this.sql = sql;
+        }
+    }
+
+    private final DBMap dbMap;
+    private final List<DBMapField> projection = new ArrayList<>();
+    private final List<String> conditions = new ArrayList<>();
+    private final List<Object> args = new ArrayList<>();
+    private final List<DBMapField> orderFields = new ArrayList<>();
+    private final List<Boolean> orderDescending = new ArrayList<>();
+    private long limit;
+    private long offset;
+    boolean bypassCache;
+    boolean cached;
+
+    private String sql;
+    private ResultPlan plan;
+
+    private Query(DBMap dbMap)
+    {
+        this.dbMap = dbMap;
+    }
+
+    public static <T> Query<T> from(Class<T> clazz)
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(clazz);
+        if (dbMap == null)
+            throw new IllegalArgumentException(clazz.getName() + " is not a mapped entity");
+        return new Query<>(dbMap);
+    }
+
+    /**
+     * Reads only these fields, each row comes back as a List&lt;Object&gt; in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    public Query<List<Object>> select(String... fieldNames)
+    {
+        for (String fieldName : fieldNames)
+            projection.add(getField(fieldName));
+        changed();
+        return (Query<List<Object>>) (Query<?>) this;
+    }
+
+    /**
+     * A null value with EQ or NE becomes is null / is not null.
+     */
+    public Query<T> where(String fieldName, Op op, Object value)
+    {
+        DBMapField field = getField(fieldName);
+        if (value == null && (op == Op.EQ || op == Op.NE))
+            conditions.add(field.columnName + (op == Op.EQ ? " is null" : " is not null"));
+        else
+        {
+            conditions.add(field.columnName + " " + op.sql + " ?");
+            args.add(value);
+        }
+        changed();
+        return this;
+    }
+
+    public Query<T> eq(String fieldName, Object value)
+    {
+        return where(fieldName, Op.EQ, value);
+    }
+
+    public Query<T> isNull(String fieldName)
+    {
+        return where(fieldName, Op.EQ, null);
+    }
+
+    public Query<T> isNotNull(String fieldName)
+    {
+        return where(fieldName, Op.NE, null);
+    }
+
+    /**
+     * An empty collection matches nothing.
+     */
+    public Query<T> in(String fieldName, Collection<?> values)
+    {
+        DBMapField field = getField(fieldName);
+        if (values.isEmpty())
+            conditions.add("1 = 0");
+        else
+        {
+            conditions.add(field.columnName + " in (" + String.join(",", Collections.nCopies(values.size(), "?")) + ")");
+            args.addAll(values);
+        }
+        changed();
+        return this;
+    }
+
+    public Query<T> orderBy(String fieldName)
+    {
+        orderFields.add(getField(fieldName));
+        orderDescending.add(false);
+        changed();
+        return this;
+    }
+
+    public Query<T> orderByDesc(String fieldName)
+    {
+        orderFields.add(getField(fieldName));
+        orderDescending.add(true);
+        changed();
+        return this;
+    }
+
+    /**
+     * Paged queries without an orderBy are ordered by primary key, so pages are stable (and SQL Server accepts them).
+     */
+    public Query<T> limit(long limit)
+    {
+        this.limit = limit;
+        changed();
+        return this;
+    }
+
+    public Query<T> offset(long offset)
+    {
+        this.offset = offset;
+        changed();
+        return this;
+    }
+
+    public Query<T> bypassCache()
+    {
+        this.bypassCache = true;
+        return this;
+    }
+
+    public Query<T> cached()
+    {
+        this.cached = true;
+        return this;
+    }
+
+    public List<T> list()
+    {
+        return EOI.executeQuery(this);
+    }
+
+    /**
+     * Maps each row into dtoClass, see DtoMapper.
+     */
+    public <D> List<D> listAs(Class<D> dtoClass)
+    {
+        return EOI.executeProjection(dtoClass, getSQL(), getArgs());
+    }
+
+    public <D> long streamAs(Class<D> dtoClass, Consumer<? super D> consumer)
+    {
+        return EOI.streamProjection(dtoClass, getSQL(), getArgs(), consumer);
+    }
+
+    public T first()
+    {
+        List<T> results = list();
+        if (results != null && results.size() > 0)
+            return results.get(0);
+        return null;
+    }
+
+    public long count()
+    {
+        String countSQL = getCountSQL();
+        List<ProjectionColumn> columns = Collections.singletonList(new ProjectionColumn("count(*)", DBMapField.LONG));
+        List<List<Object>> results = EOI.executeQuery(countSQL, new ResultPlan(dbMap, columns, false), getArgs(), false);
+        if (results == null || results.isEmpty())
+            return 0;
+        return (Long) results.get(0).get(0);
+    }
+
+    /**
+     * Keyset page: the pageSize rows after token, or the first page when token is null. Rows are ordered by the
+     * orderBy fields plus the primary key, which must not be null. limit and offset are ignored.
+     */
+    public KeysetPage<T> seek(String token, int pageSize)
+    {
+        if (!projection.isEmpty())
+            throw new IllegalStateException("keyset paging reads the ordering values off entities, it can't be combined with select()");
+
+        List<DBMapField> fields = new ArrayList<>(orderFields);
+        List<Boolean> descending = new ArrayList<>(orderDescending);
+        boolean pkDescending = !descending.isEmpty() && descending.get(descending.size() - 1);
+        for (DBMapField pkField : dbMap.getPKFields())
+            if (!fields.contains(pkField))
+            {
+                fields.add(pkField);
+                descending.add(pkDescending);
+            }
+
+        List<String> where = new ArrayList<>(conditions);
+        List<Object> pageArgs = getArgs();
+        if (token != null)
+            where.add(SQLGenerator.getSeekPredicate(fields, descending, decodeToken(token, fields), pageArgs));
+
+        StringJoiner ordering = new StringJoiner(", ");
+        for (int i = 0; i < fields.size(); i++)
+            ordering.add(fields.get(i).columnName + (descending.get(i) ? " desc" : ""));
+
+        String pageSQL = "select * from " + dbMap.tableName
+                + (where.isEmpty() ? "" : " where " + String.join(" and ", where))
+                + " order by " + ordering + SQLGenerator.getLimitClause(pageSize + 1, 0);
+
+        // one extra row tells whether there is a next page
+        List<T> rows = EOI.executeQuery(pageSQL, new ResultPlan(dbMap, null, false), pageArgs, bypassCache);
+        if (rows == null || rows.size() <= pageSize)
+            return new KeysetPage<>(rows, null);
+
+        rows = new ArrayList<>(rows.subList(0, pageSize));
+        return new KeysetPage<>(rows, encodeToken(rows.get(pageSize - 1), fields));
+    }
+
+    // table and ordering columns, so a token can't be replayed against a different query
+    private int getTokenSignature(List<DBMapField> fields)
+    {
+        int signature = dbMap.tableName.hashCode();
+        for (DBMapField field : fields)
+            signature = 31 * signature + field.columnName.hashCode();
+        return signature;
+    }
+
+    private String encodeToken(Object last, List<DBMapField> fields)
+    {
+        List<Object> values = new ArrayList<>();
+        int size = 4;
+        for (DBMapField field : fields)
+        {
+            Object value = field.getValue(last);
+            if (value == null)
+                throw new IllegalStateException("keyset ordering field " + field + " is null on " + last);
+            if (value instanceof String)
+                value = ((String) value).getBytes(StandardCharsets.UTF_8);
+            values.add(value);
+            size += EntityCodec.getEncodedSize(field, value);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(getTokenSignature(fields));
+        for (int i = 0; i < fields.size(); i++)
+            EntityCodec.putValue(buffer, fields.get(i), values.get(i));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    private List<Object> decodeToken(String token, List<DBMapField> fields)
+    {
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+            if (buffer.getInt() != getTokenSignature(fields))
+                throw new IllegalArgumentException("continuation token belongs to a different query");
+
+            List<Object> values = new ArrayList<>();
+            for (DBMapField field : fields)
+                values.add(EntityCodec.getValue(buffer, field));
+            return values;
+        }
+        catch (RuntimeException e)
+        {
+            if (e instanceof IllegalArgumentException)
+                throw e;
+            throw new IllegalArgumentException("malformed continuation token", e);
+        }
+    }
+
+    public Page<T> page(long offset, int pageSize)
+    {
+        return page(offset, pageSize, true);
+    }
+
+    /**
+     * A page of rows plus the total matching, limit and offset are ignored.
+     * <br>Without exactTotal the total comes from ApproximateCount.
+     */
+    public Page<T> page(long offset, int pageSize, boolean exactTotal)
+    {
+        String select = getSelectList();
+        if (exactTotal && SQLGenerator.isWindowCountSupported())
+        {
+            // a bare * can't be followed by another column on every dialect
+            String windowSelect = (projection.isEmpty() ? dbMap.tableName + ".*" : select) + ", count(*) over() eoi_total";
+            String pageSQL = buildSQL(windowSelect, pageSize, offset);
+            Page<T> page = EOI.executeWindowedPageQuery(pageSQL, getPlan(), getArgs(), bypassCache);
+            if (page == null)
+                return new Page<>(null, 0, true);
+            // no rows: either nothing matches, or the page is past the end and the total still has to be counted
+            if (page.total < 0)
+                page.total = offset > 0 ? count() : 0;
+            return page;
+        }
+
+        List<T> rows = EOI.executeQuery(buildSQL(select, pageSize, offset), new ResultPlan(dbMap, getPlan().projectionColumns, false), getArgs(), bypassCache);
+        if (exactTotal)
+            return new Page<>(rows, count(), true);
+
+        long total = ApproximateCount.get(dbMap, getCountSQL(), getArgs(), conditions.isEmpty(), this::count);
+        return new Page<>(rows, total, false);
+    }
+
+    public DBMap getDbMap()
+    {
+        return dbMap;
+    }
+
+    public String getSQL()
+    {
+        if (sql == null)
+            sql = buildSQL(getSelectList(), limit, offset);
+        return sql;
+    }
+
+    private String getSelectList()
+    {
+        if (projection.isEmpty())
+            return "*";
+
+        StringJoiner columns = new StringJoiner(", ");
+        for (DBMapField field : projection)
+            columns.add(field.columnName);
+        return columns.toString();
+    }
+
+    private String buildSQL(String select, long limit, long offset)
+    {
+        List<String> ordering = new ArrayList<>();
+        for (int i = 0; i < orderFields.size(); i++)
+            ordering.add(orderFields.get(i).columnName + (orderDescending.get(i) ? " desc" : ""));
+        if (ordering.isEmpty() && (limit > 0 || offset > 0))
+            for (DBMapField pkField : dbMap.getPKFields())
+                ordering.add(pkField.columnName);
+
+        String query = "select " + select + " from " + dbMap.tableName + getWhereClause();
+        if (!ordering.isEmpty())
+            query += " order by " + String.join(", ", ordering);
+        if (limit > 0 || offset > 0)
+            query += SQLGenerator.getLimitClause(limit > 0 ? String.valueOf(limit) : "", String.valueOf(offset));
+        return query;
+    }
+
+    private String getCountSQL()
+    {
+        return "select count(*) from " + dbMap.tableName + getWhereClause();
+    }
+
+    public List<Object> getArgs()
+    {
+        return new ArrayList<>(args);
+    }
+
+    public ResultPlan getPlan()
+    {
+        if (plan == null)
+        {
+            List<ProjectionColumn> columns = null;
+            if (!projection.isEmpty())
+            {
+                columns = new ArrayList<>();
+                for (DBMapField field : projection)
+                    columns.add(new ProjectionColumn(field.columnName, field.type));
+            }
+            boolean fullTable = columns == null && conditions.isEmpty() && limit == 0 && offset == 0;
+            plan = new ResultPlan(dbMap, columns, fullTable);
+        }
+        return plan;
+    }
+
+    public QueryKey getCacheKey()
+    {
+        return new QueryKey(getSQL(), getArgs());
+    }
+
+    private String getWhereClause()
+    {
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+
+    private DBMapField getField(String fieldName)
+    {
+        DBMapField field = dbMap.getFieldByFieldName(fieldName);
+        if (field == null)
+            throw new IllegalArgumentException(dbMap.className + " has no mapped field " + fieldName);
+        return field;
+    }
+
+    private void changed()
+    {
+        sql = null;
+        plan = null;
+    }
+
+    public String toString()
+    {
+        return getCacheKey().toString();
+    }
+}
@@ -0,0 +1,171 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in cache of query result lists, keyed by SQL plus args. A write to a table bumps its version, making every
+ * cached list that read from it stale.
+ */
+public class QueryCache
+{
+    public static boolean enabled = false;
+    public static int maxEntries = 1000;
+    public static int maxRowsPerEntry = 10_000;
+
+    public static AtomicLong hits = new AtomicLong();
+    public static AtomicLong misses = new AtomicLong();
+    public static AtomicLong evictions = new AtomicLong();
+    public static AtomicLong invalidations = new AtomicLong();
+
+    private static final ConcurrentMap<QueryKey, Entry> cache = new ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<QueryKey> insertionOrder = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+
+    static
+    {
+        MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+        metricRegistry.register("eoi.queryCache.hits", (Gauge<Long>) hits::get);
+        metricRegistry.register("eoi.queryCache.misses", (Gauge<Long>) misses::get);
+        metricRegistry.register("eoi.queryCache.evictions", (Gauge<Long>) evictions::get);
+        metricRegistry.register("eoi.queryCache.invalidations", (Gauge<Long>) invalidations::get);
+        metricRegistry.register("eoi.queryCache.size", (Gauge<Integer>) cache::size);
+        metricRegistry.register("eoi.queryCache.hitRatio", new RatioGauge()
+        {
+            @Override
+            protected Ratio getRatio()
+            {
+                return Ratio.of(hits.get(), hits.get() + misses.get());
+            }
+        });
+    }
+
+    public static <T> List<T> get(String queryString, List<Object> args)
+    {
+        Entry entry = cache.get(new QueryKey(queryString, args));
+        if (entry != null && entry.isCurrent())
+        {
+            hits.incrementAndGet();
+            // cached from the same SQL, so the rows are the type the caller asked for then
+            @SuppressWarnings("unchecked")
+            List<T> results = (List<T>) entry.results;
+            return new ArrayList<>(results);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Pass the result to put() once the query has run, so a write that lands meanwhile keeps its results out.
+     */
+    public static long[] getVersions(String[] tables)
+    {
+        long[] versions = new long[tables.length];
+        for (int i = 0; i < tables.length; i++)
+            versions[i] = getVersion(tables[i]).get();
+        return versions;
+    }
+
+    public static void put(String queryString, List<Object> args, String[] tables, long[] versions, List<?> results)
+    {
+        if (results.size() > maxRowsPerEntry)
+            return;
+
+        QueryKey key = new QueryKey(queryString, new ArrayList<>(args));
+        if (cache.put(key, new Entry(tables, versions, Collections.unmodifiableList(new ArrayList<>(results)))) == null)
+            insertionOrder.add(key);
+
+        while (cache.size() > maxEntries)
+        {
+            QueryKey oldest = insertionOrder.poll();
+            if (oldest == null)
+                break;
+            cache.remove(oldest);
+            evictions.incrementAndGet();
+        }
+    }
+
+    public static void invalidateTable(String table)
+    {
+        if (table == null || table.isEmpty())
+        {
+            table = "";
+            clear();
+        }
+        else
+        {
+            getVersion(table).incrementAndGet();
+            invalidations.incrementAndGet();
+        }
+
+        // other connections can't see the write until commit, CacheTransaction invalidates again then
+        CacheTransaction cacheTransaction = CacheTransaction.getActive();
+        if (cacheTransaction != null)
+            cacheTransaction.addTableWritten(table);
+    }
+
+    public static void clear()
+    {
+        for (AtomicLong version : tableVersions.values())
+            version.incrementAndGet();
+        cache.clear();
+        insertionOrder.clear();
+        invalidations.incrementAndGet();
+    }
+
+    public static int size()
+    {
+        return cache.size();
+    }
+
+    public static String[] getReferencedTables(String queryString)
+    {
+        Set<String> tables = new LinkedHashSet<>();
+        String[] tokens = queryString.toLowerCase().split("[\\s,()]+");
+        for (int i = 0; i < tokens.length - 1; i++)
+            if (tokens[i].equals("from") || tokens[i].equals("join"))
+            {
+                String table = tokens[i + 1];
+                if (table.endsWith(";"))
+                    table = table.substring(0, table.length() - 1);
+                if (!table.isEmpty() && !table.equals("select"))
+                    tables.add(table);
+            }
+        return tables.toArray(new String[0]);
+    }
+
+    private static AtomicLong getVersion(String table)
+    {
+        return tableVersions.computeIfAbsent(table.toLowerCase(), k -> new AtomicLong());
+    }
+
+    private static class Entry
+    {
+        private final String[] tables;
+        private final long[] versions;
+        private final List<?> results;
+
+        private Entry(String[] tables, long[] versions, List<?> results)
+        {
+            this.tables = tables;
+            this.versions = versions;
+            this.results = results;
+        }
+
+        private boolean isCurrent()
+        {
+            for (int i = 0; i < tables.length; i++)
+                if (getVersion(tables[i]).get() != versions[i])
+                    return false;
+            return true;
+        }
+    }
+}
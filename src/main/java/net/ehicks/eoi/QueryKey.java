@@ -0,0 +1,37 @@
+package net.ehicks.eoi;
+
+import java.util.List;
+
+public final class QueryKey
+{
+    public final String queryString;
+    public final List<Object> args;
+    private final int hash;
+
+    public QueryKey(String queryString, List<Object> args)
+    {
+        this.queryString = queryString;
+        this.args = args;
+        this.hash = 31 * queryString.hashCode() + args.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) return true;
+        if (!(obj instanceof QueryKey)) return false;
+        QueryKey that = (QueryKey) obj;
+        return this.hash == that.hash && this.queryString.equals(that.queryString) && this.args.equals(that.args);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    public String toString()
+    {
+        return queryString + " " + args;
+    }
+}
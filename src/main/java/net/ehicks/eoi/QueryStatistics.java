@@ -0,0 +1,129 @@
+package net.ehicks.eoi;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per statement totals keyed by SQLFingerprint, in the spirit of pg_stat_statements.
+ * <br>Once maxEntries is reached the tenth with the fewest calls is dropped.
+ */
+public class QueryStatistics
+{
+    public static boolean enabled = true;
+    public static int maxEntries = 1000;
+
+    private static final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private static class Stats
+    {
+        final LongAdder calls = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder rows = new LongAdder();
+        final LongAdder cacheHits = new LongAdder();
+    }
+
+    public static class Entry
+    {
+        public final String fingerprint;
+        public final long calls;
+        public final long totalNanos;
+        public final long maxNanos;
+        public final long rows;
+        public final long cacheHits;
+
+        Entry(String fingerprint, Stats stats)
+        {
+            this.fingerprint = fingerprint;
+            this.calls = stats.calls.sum();
+            this.totalNanos = stats.totalNanos.sum();
+            this.maxNanos = stats.maxNanos.get();
+            this.rows = stats.rows.sum();
+            this.cacheHits = stats.cacheHits.sum();
+        }
+
+        public double getTotalMillis()
+        {
+            return totalNanos / 1_000_000d;
+        }
+
+        public double getMeanMillis()
+        {
+            return calls == 0 ? 0 : totalNanos / 1_000_000d / calls;
+        }
+
+        public double getMaxMillis()
+        {
+            return maxNanos / 1_000_000d;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d calls, %.2f ms total, %.2f ms mean, %.2f ms max, %d rows, %d cache hits: %s",
+                    calls, getTotalMillis(), getMeanMillis(), getMaxMillis(), rows, cacheHits, fingerprint);
+        }
+    }
+
+    static void record(String fingerprint, long nanos, long rows)
+    {
+        if (!enabled)
+            return;
+
+        Stats entry = getStats(fingerprint);
+        entry.calls.increment();
+        entry.totalNanos.add(nanos);
+        entry.rows.add(rows);
+        if (nanos > entry.maxNanos.get())
+            entry.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    static void recordCacheHit(String queryString)
+    {
+        if (enabled)
+            getStats(SQLFingerprint.of(queryString)).cacheHits.increment();
+    }
+
+    private static Stats getStats(String fingerprint)
+    {
+        Stats entry = stats.get(fingerprint);
+        if (entry == null)
+        {
+            if (stats.size() >= maxEntries)
+                evict();
+            entry = stats.computeIfAbsent(fingerprint, key -> new Stats());
+        }
+        return entry;
+    }
+
+    private static void evict()
+    {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().calls.sum()));
+        int toEvict = Math.max(1, entries.size() / 10);
+        for (int i = 0; i < toEvict && i < entries.size(); i++)
+            stats.remove(entries.get(i).getKey(), entries.get(i).getValue());
+    }
+
+    public static List<Entry> getSnapshot()
+    {
+        return getTop(Integer.MAX_VALUE);
+    }
+
+    public static List<Entry> getTop(int limit)
+    {
+        List<Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, Stats> entry : stats.entrySet())
+            entries.add(new Entry(entry.getKey(), entry.getValue()));
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.totalNanos).reversed());
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    public static void reset()
+    {
+        stats.clear();
+    }
+}
@@ -0,0 +1,97 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Timer;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of one statement into eoi.query.&lt;phase&gt;.&lt;fingerprint&gt; and records it in QueryStatistics.
+ */
+public class QueryTiming
+{
+    enum Phase
+    {
+        ACQUIRE, EXECUTE, HYDRATE, AUDIT;
+
+        final String metricName = name().toLowerCase(Locale.ROOT);
+    }
+
+    static final String OTHER = "other";
+
+    private static final ConcurrentMap<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    final String fingerprint;
+    /** fingerprint, or "other" once Metrics.maxFingerprints is reached */
+    final String metricFingerprint;
+    private final Timer[] phaseTimers;
+    private final long start;
+    private long mark;
+
+    private QueryTiming(String fingerprint, String metricFingerprint, Timer[] phaseTimers)
+    {
+        this.fingerprint = fingerprint;
+        this.metricFingerprint = metricFingerprint;
+        this.phaseTimers = phaseTimers;
+        this.start = System.nanoTime();
+        this.mark = start;
+    }
+
+    static QueryTiming start(String queryString)
+    {
+        String fingerprint = SQLFingerprint.of(queryString);
+        NPlusOneDetector.onStatement(fingerprint);
+        String metricFingerprint = fingerprint;
+        Timer[] phaseTimers = timers.get(fingerprint);
+        if (phaseTimers == null)
+        {
+            if (timers.size() >= Metrics.maxFingerprints)
+                metricFingerprint = OTHER;
+            phaseTimers = timers.computeIfAbsent(metricFingerprint, QueryTiming::createTimers);
+        }
+        return new QueryTiming(fingerprint, metricFingerprint, phaseTimers);
+    }
+
+    private static Timer[] createTimers(String fingerprint)
+    {
+        Timer[] phaseTimers = new Timer[Phase.values().length];
+        for (Phase phase : Phase.values())
+            phaseTimers[phase.ordinal()] = Metrics.getBoundedTimer(getMetricName(phase, fingerprint));
+        return phaseTimers;
+    }
+
+    static void reset()
+    {
+        timers.clear();
+        Metrics.getMetricRegistry().removeMatching((name, metric) -> name.startsWith("eoi.query."));
+    }
+
+    static String getMetricName(Phase phase, String fingerprint)
+    {
+        return "eoi.query." + phase.metricName + "." + fingerprint;
+    }
+
+    long mark(Phase phase)
+    {
+        long now = System.nanoTime();
+        long elapsed = now - mark;
+        phaseTimers[phase.ordinal()].update(elapsed, TimeUnit.NANOSECONDS);
+        mark = now;
+        return elapsed;
+    }
+
+    /**
+     * Starts the next phase now, leaving the time since the previous mark unrecorded.
+     */
+    void restart()
+    {
+        mark = System.nanoTime();
+    }
+
+    void finish(long rows)
+    {
+        QueryStatistics.record(fingerprint, System.nanoTime() - start, rows);
+    }
+}
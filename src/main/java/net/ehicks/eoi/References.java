@@ -0,0 +1,17 @@
+package net.ehicks.eoi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a foreign key field holding the single column primary key of another entity, see EOI.loadReferences and
+ * EOI.loadReferencing.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface References
+{
+    Class<?> value();
+}
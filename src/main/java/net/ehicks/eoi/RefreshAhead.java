@@ -0,0 +1,157 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reloads hot cache entries in the background shortly before their TTL runs out.
+ * <br>An entry qualifies once less than refreshWindow of its TTL remains and it was read hotThreshold times.
+ */
+public class RefreshAhead
+{
+    private static final Logger log = LoggerFactory.getLogger(RefreshAhead.class);
+
+    public static boolean enabled = false;
+    public static double refreshWindow = 0.2;
+    public static int hotThreshold = 5;
+    public static int batchSize = 100;
+    public static long flushMillis = 50;
+    public static int threads = 2;
+
+    private static final ConcurrentMap<CacheKey, Long> queued = new ConcurrentHashMap<>();
+    // taken out of queued by flush until their refresh ends, so a slow refresh isn't sent again
+    private static final Set<CacheKey> inFlight = ConcurrentHashMap.newKeySet();
+    private static final Counter refreshed;
+    private static final Counter evicted;
+    private static final Timer lag;
+    private static ScheduledExecutorService scheduler;
+    private static ExecutorService loaders;
+
+    static
+    {
+        MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+        refreshed = metricRegistry.counter("eoi.refreshAhead.refreshed");
+        evicted = metricRegistry.counter("eoi.refreshAhead.evicted");
+        lag = metricRegistry.timer("eoi.refreshAhead.lag");
+        metricRegistry.register("eoi.refreshAhead.queued", (Gauge<Integer>) queued::size);
+    }
+
+    static void onAccess(CacheRegion region, CacheKey key, CacheRegion.Entry entry, long now)
+    {
+        if (entry.accesses < hotThreshold)
+            return;
+        if (entry.expiresAt - now > region.ttlMillis * refreshWindow)
+            return;
+
+        if (!inFlight.contains(key) && queued.putIfAbsent(key, System.nanoTime()) == null)
+            start();
+    }
+
+    private static synchronized void start()
+    {
+        if (scheduler != null)
+            return;
+
+        loaders = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "eoi-refresh-ahead");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "eoi-refresh-ahead-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(RefreshAhead::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void shutdown()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            loaders.shutdownNow();
+        }
+        scheduler = null;
+        loaders = null;
+        queued.clear();
+        inFlight.clear();
+    }
+
+    private static void flush()
+    {
+        Map<DBMap, List<CacheKey>> byDbMap = new HashMap<>();
+        Map<CacheKey, Long> queuedAt = new HashMap<>();
+        for (CacheKey key : queued.keySet())
+        {
+            inFlight.add(key);
+            Long time = queued.remove(key);
+            if (time == null)
+            {
+                inFlight.remove(key);
+                continue;
+            }
+            queuedAt.put(key, time);
+            byDbMap.computeIfAbsent(key.dbMap, k -> new ArrayList<>()).add(key);
+        }
+
+        for (List<CacheKey> keys : byDbMap.values())
+            for (int from = 0; from < keys.size(); from += batchSize)
+            {
+                List<CacheKey> batch = keys.subList(from, Math.min(from + batchSize, keys.size()));
+                List<Long> batchQueuedAt = new ArrayList<>();
+                for (CacheKey key : batch)
+                    batchQueuedAt.add(queuedAt.get(key));
+                loaders.execute(() -> refresh(batch, batchQueuedAt));
+            }
+    }
+
+    private static void refresh(List<CacheKey> batch, List<Long> queuedAt)
+    {
+        DBMap dbMap = batch.get(0).dbMap;
+        try
+        {
+            List<Object> pks = new ArrayList<>();
+            for (CacheKey key : batch)
+                pks.add(key.getPKValue());
+
+            // bypassing the cache hydrates every row, which replaces the entries with fresh ones
+            String queryString = SQLGenerator.getSelectByIdsStatement(dbMap, pks.size());
+            List<Object> results = EOI.executeQuery(queryString, EOI.getPKArgs(dbMap, pks), true);
+            if (results == null)
+                return;
+
+            Set<CacheKey> found = new HashSet<>();
+            for (Object result : results)
+                found.add(CacheKey.fromObject(dbMap, result));
+
+            long now = System.nanoTime();
+            for (int i = 0; i < batch.size(); i++)
+            {
+                CacheKey key = batch.get(i);
+                if (!found.contains(key))
+                {
+                    EOICache.unset(key);
+                    evicted.inc();
+                }
+                lag.update(now - queuedAt.get(i), TimeUnit.NANOSECONDS);
+            }
+            refreshed.inc(found.size());
+        }
+        catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+        }
+        finally
+        {
+            inFlight.removeAll(batch);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.ehicks.eoi;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * How ResultSetParser turns the rows of one statement into entities, projected columns or raw Object[] rows.
+ */
+public class ResultPlan
+{
+    public static int maxCachedPlans = 1000;
+
+    private static final Pattern FULL_TABLE_QUERY = Pattern.compile("\\s*select\\s+\\*\\s+from\\s+\\w+\\s*;?\\s*", Pattern.CASE_INSENSITIVE);
+    private static final ConcurrentMap<String, ResultPlan> plans = new ConcurrentHashMap<>();
+    private static final ResultPlan RAW_ROWS = new ResultPlan(null, null, false);
+
+    public final DBMap dbMap;
+    public final List<ProjectionColumn> projectionColumns;
+    /** reads every row of the table unfiltered, so its results leave the whole table cached */
+    public final boolean fullTable;
+
+    ResultPlan(DBMap dbMap, List<ProjectionColumn> projectionColumns, boolean fullTable)
+    {
+        this.dbMap = dbMap;
+        this.projectionColumns = projectionColumns;
+        this.fullTable = fullTable;
+    }
+
+    public boolean isEntity()
+    {
+        return dbMap != null && projectionColumns == null;
+    }
+
+    public static ResultPlan forSQL(String queryString)
+    {
+        ResultPlan plan = plans.get(queryString);
+        if (plan == null)
+        {
+            plan = parse(queryString);
+            if (plans.size() >= maxCachedPlans)
+                plans.clear();
+            plans.put(queryString, plan);
+        }
+        return plan;
+    }
+
+    private static ResultPlan parse(String queryString)
+    {
+        DBMap dbMap = SQLQuery.parseSQL(queryString).dbMap;
+        if (dbMap == null)
+            return RAW_ROWS;
+        if (queryString.startsWith("select *"))
+            return new ResultPlan(dbMap, null, FULL_TABLE_QUERY.matcher(queryString).matches());
+        return new ResultPlan(dbMap, ProjectionColumn.getProjectionColumns(queryString, dbMap), false);
+    }
+
+    public static void clear()
+    {
+        plans.clear();
+    }
+}
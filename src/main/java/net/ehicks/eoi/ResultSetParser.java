@@ -13,10 +13,24 @@ public class ResultSetParser
 {
     public static <T> List<T> parseResultSet(String queryString, ResultSet resultSet, boolean bypassCache) throws Exception
     {
-        List<T> results = new ArrayList<>();
+        return parseResultSet(ResultPlan.forSQL(queryString), resultSet, bypassCache);
+    }
 
-        SQLQuery sqlQuery = SQLQuery.parseSQL(queryString);
-        DBMap dbMap = sqlQuery.dbMap;
+    public static <T> List<T> parseResultSet(ResultPlan plan, ResultSet resultSet, boolean bypassCache) throws Exception
+    {
+        return parseResultSet(plan, resultSet, bypassCache, null, null);
+    }
+
+    /**
+     * @param total if not null, receives the count(*) over() value the query carries as its last column
+     */
+    static <T> List<T> parseResultSet(ResultPlan plan, ResultSet resultSet, boolean bypassCache, long[] total, HydrationMetrics.Tally tally) throws Exception
+    {
+        if (tally == null)
+            tally = new HydrationMetrics.Tally(-1);
+        List<T> results = new ArrayList<>();
+        int totalColumn = total == null ? 0 : resultSet.getMetaData().getColumnCount();
+        DBMap dbMap = plan.dbMap;
 
         if (dbMap == null)
         {
@@ -29,80 +43,94 @@ public class ResultSetParser
                 for (int i = 1; i <= columnsNumber; i++)
                     row[i - 1] = resultSet.getObject(i);
                 results.add((T) row);
+                tally.rows++;
+                tally.columns += columnsNumber;
             }
             return results;
         }
 
-        if (queryString.startsWith("select *"))
+        if (plan.isEntity())
         {
             while (resultSet.next())
             {
-                Object object = getEOIObjectFromResultSet(resultSet, dbMap, bypassCache);
+                if (totalColumn > 0 && results.isEmpty())
+                    total[0] = resultSet.getLong(totalColumn);
+                Object object = getEOIObjectFromResultSet(resultSet, dbMap, bypassCache, tally);
                 results.add((T) object);
             }
         }
         else
         {
-            List<ProjectionColumn> projectionColumns = ProjectionColumn.getProjectionColumns(queryString, dbMap);
+            // columns are read by position, labels like count(*) come back differently per driver
+            List<ProjectionColumn> projectionColumns = plan.projectionColumns;
             while (resultSet.next())
             {
+                if (totalColumn > 0 && results.isEmpty())
+                    total[0] = resultSet.getLong(totalColumn);
                 List<Object> list = new ArrayList<>();
-                for (ProjectionColumn projectionColumn : projectionColumns)
+                for (int i = 0; i < projectionColumns.size(); i++)
                 {
+                    ProjectionColumn projectionColumn = projectionColumns.get(i);
+                    int columnIndex = i + 1;
                     if (projectionColumn.type.equals("STRING"))
-                        list.add(resultSet.getString(projectionColumn.columnLabel));
+                        list.add(resultSet.getString(columnIndex));
                     if (projectionColumn.type.equals("INTEGER"))
-                        list.add(resultSet.getInt(projectionColumn.columnLabel));
+                        list.add(resultSet.getInt(columnIndex));
                     if (projectionColumn.type.equals("LONG"))
-                    {
-                        if ((EOI.dialect.equals(Dialect.SQL_SERVER) || EOI.dialect.equals(Dialect.POSTGRES)) && projectionColumn.columnLabel.equals("count(*)"))
-                            list.add(resultSet.getLong(1));
-                        else
-                            list.add(resultSet.getLong(projectionColumn.columnLabel));
-                    }
+                        list.add(resultSet.getLong(columnIndex));
                     if (projectionColumn.type.equals("DECIMAL"))
-                        list.add(resultSet.getBigDecimal(projectionColumn.columnLabel));
+                        list.add(resultSet.getBigDecimal(columnIndex));
                     if (projectionColumn.type.equals("TIMESTAMP"))
-                        list.add(resultSet.getTimestamp(projectionColumn.columnLabel));
+                        list.add(resultSet.getTimestamp(columnIndex));
                     if (projectionColumn.type.equals("BLOB"))
                     {
-                        Blob blob = resultSet.getBlob(projectionColumn.columnLabel);
+                        Blob blob = resultSet.getBlob(columnIndex);
                         list.add(blob.getBytes(0, (int) blob.length()));
+                        tally.blobBytes += blob.length();
                     }
                     if (projectionColumn.type.equals("BOOLEAN"))
-                        list.add(resultSet.getBoolean(projectionColumn.columnLabel));
+                        list.add(resultSet.getBoolean(columnIndex));
                 }
                 results.add((T) list);
+                tally.rows++;
+                tally.columns += projectionColumns.size();
             }
         }
         return results;
     }
 
-    private static Object getEOIObjectFromResultSet(ResultSet resultSet, DBMap dbMap, boolean bypassCache) throws Exception
+    private static Object getEOIObjectFromResultSet(ResultSet resultSet, DBMap dbMap, boolean bypassCache, HydrationMetrics.Tally tally) throws Exception
     {
-        Object object = dbMap.constructor.newInstance();
-
-        for (DBMapField field : dbMap.getPKFields())
-            invokeSetter(resultSet, object, field);
-
-        // we've filled the PK, can we find it in cache?
-        if (EOI.enableCache && !bypassCache)
+        // read just the PK columns, can we find it in cache?
+        CacheKey cacheKey = null;
+        if (EOICache.isCached(dbMap))
         {
-            Object fromCache = EOICache.get(object.toString());
-            if (fromCache != null)
-                return fromCache;
+            cacheKey = CacheKey.fromResultSet(dbMap, resultSet);
+            if (!bypassCache)
+            {
+                Object fromCache = EOICache.get(cacheKey);
+                if (fromCache != null)
+                {
+                    tally.cacheShortCircuits++;
+                    return fromCache;
+                }
+            }
         }
 
-        for (DBMapField field : dbMap.getNonPKFields())
-            invokeSetter(resultSet, object, field);
+        Object object = dbMap.constructor.newInstance();
+        for (DBMapField field : dbMap.fields)
+            tally.blobBytes += invokeSetter(resultSet, object, field);
+        tally.rows++;
+        tally.columns += dbMap.fields.size();
 
-        if (EOI.enableCache)
-            EOICache.set(object);
+        if (cacheKey != null)
+            EOICache.set(cacheKey, object);
 
         return object;
     }
 
-    private static void invokeSetter(ResultSet resultSet, Object object, DBMapField field) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException, SQLException
+    // returns the bytes read for a BLOB field, otherwise 0
+    private static int invokeSetter(ResultSet resultSet, Object object, DBMapField field) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException, SQLException
     {
         Method method = field.getSetter();
 
@@ -122,7 +150,7 @@ public class ResultSetParser
             {
                 byte[] bytes = resultSet.getBytes(field.columnName);
                 method.invoke(object, (Object) bytes);
-                return;
+                return bytes == null ? 0 : bytes.length;
             }
 
             Blob blob = resultSet.getBlob(field.columnName);
@@ -131,8 +159,10 @@ public class ResultSetParser
                 position = 1;
             byte[] bytes = blob.getBytes(position, (int) blob.length());
             method.invoke(object, (Object) bytes);
+            return bytes.length;
         }
         if (field.type.equals("BOOLEAN"))
             method.invoke(object, resultSet.getBoolean(field.columnName));
+        return 0;
     }
 }
@@ -0,0 +1,44 @@
+package net.ehicks.eoi;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes SQL so that statements differing only in literal values share one fingerprint.
+ */
+public class SQLFingerprint
+{
+    public static int maxCachedFingerprints = 1000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w.])\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    public static String of(String queryString)
+    {
+        String fingerprint = fingerprints.get(queryString);
+        if (fingerprint == null)
+        {
+            fingerprint = normalize(queryString);
+            if (fingerprints.size() >= maxCachedFingerprints)
+                fingerprints.clear();
+            fingerprints.put(queryString, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    static String normalize(String queryString)
+    {
+        String normalized = STRING_LITERAL.matcher(queryString).replaceAll("?");
+        normalized = NUMERIC_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = IN_LIST.matcher(normalized).replaceAll("in (?)");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        if (normalized.endsWith(";"))
+            normalized = normalized.substring(0, normalized.length() - 1).trim();
+        return normalized.toLowerCase(Locale.ROOT);
+    }
+}
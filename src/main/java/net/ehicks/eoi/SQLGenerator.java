@@ -138,8 +138,94 @@ public class SQLGenerator
         return new PSIngredients(where, args);
     }
 
+    public static String getSelectByIdsStatement(DBMap dbMap, int idCount)
+    {
+        List<DBMapField> pkFields = dbMap.getPKFields();
+        StringBuilder where = new StringBuilder();
+        if (pkFields.size() == 1)
+        {
+            where.append(pkFields.get(0).columnName);
+            if (idCount == 1)
+                where.append("=?");
+            else
+            {
+                where.append(" in (");
+                for (int i = 0; i < idCount; i++)
+                    where.append(i == 0 ? "?" : ",?");
+                where.append(")");
+            }
+        }
+        else
+        {
+            for (int i = 0; i < idCount; i++)
+            {
+                if (i > 0)
+                    where.append(" or ");
+                where.append("(");
+                for (int j = 0; j < pkFields.size(); j++)
+                {
+                    if (j > 0)
+                        where.append(" and ");
+                    where.append(pkFields.get(j).columnName).append("=?");
+                }
+                where.append(")");
+            }
+        }
+
+        return "select * from " + dbMap.tableName + " where " + where;
+    }
+
+    /**
+     * Predicate selecting the rows after values in the given ordering, for keyset paging.
+     * @param args receives the parameters in placeholder order
+     */
+    public static String getSeekPredicate(List<DBMapField> fields, List<Boolean> descending, List<Object> values, List<Object> args)
+    {
+        boolean uniform = !descending.contains(!descending.get(0));
+        if (uniform && !EOI.dialect.equals(Dialect.SQL_SERVER))
+        {
+            StringJoiner columns = new StringJoiner(", ", "(", ")");
+            for (DBMapField field : fields)
+                columns.add(field.columnName);
+            args.addAll(values);
+            return columns + (descending.get(0) ? " < " : " > ") + "(" + String.join(", ", Collections.nCopies(fields.size(), "?")) + ")";
+        }
+
+        StringJoiner predicate = new StringJoiner(" or ", "(", ")");
+        for (int i = 0; i < fields.size(); i++)
+        {
+            StringJoiner term = new StringJoiner(" and ", "(", ")");
+            for (int j = 0; j < i; j++)
+            {
+                term.add(fields.get(j).columnName + " = ?");
+                args.add(values.get(j));
+            }
+            term.add(fields.get(i).columnName + (descending.get(i) ? " < ?" : " > ?"));
+            args.add(values.get(i));
+            predicate.add(term.toString());
+        }
+        return predicate.toString();
+    }
+
+    /**
+     * H2 1.4.197 has no window functions.
+     */
+    public static boolean isWindowCountSupported()
+    {
+        return EOI.dialect.equals(Dialect.POSTGRES) || EOI.dialect.equals(Dialect.SQL_SERVER);
+    }
+
     public static String getCountVersionOfQuery(String query)
     {
+        if (query.contains("group by") || query.contains(" having ") || query.startsWith("select distinct"))
+        {
+            // SQL Server rejects order by inside a subquery
+            int indexOfOrderBy = query.lastIndexOf("order by");
+            if (indexOfOrderBy != -1)
+                query = query.substring(0, indexOfOrderBy);
+            return "select count(*) from (" + query + ") eoi_count";
+        }
+
         int indexOfFrom = query.indexOf("from");
         query = query.substring(indexOfFrom);
 
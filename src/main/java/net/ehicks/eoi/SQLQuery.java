@@ -3,9 +3,11 @@ package net.ehicks.eoi;
 public class SQLQuery
 {
     public String queryString = "";
+    public String tableName = "";
     public DBMap dbMap;
     public boolean isCreate = false;
     public boolean isSelect = false;
+    public boolean isInsert = false;
     public boolean isUpdate = false;
     public boolean isDelete = false;
 
@@ -23,19 +25,22 @@ public class SQLQuery
     {
         boolean isCreate = false;
         boolean isSelect = false;
+        boolean isInsert = false;
         boolean isUpdate = false;
         boolean isDelete = false;
 
         if (sql.startsWith("create")) isCreate = true;
         if (sql.startsWith("select")) isSelect = true;
+        if (sql.startsWith("insert")) isInsert = true;
         if (sql.startsWith("update")) isUpdate = true;
         if (sql.startsWith("delete")) isDelete = true;
 
         String[] tokens = sql.split(" ");
 
+        // select/delete name the table after 'from', insert after 'into', update right after the verb
         String table = "";
-        for (int i = 0; i < tokens.length; i++)
-            if (tokens[i].equals("from"))
+        for (int i = 0; i < tokens.length - 1; i++)
+            if (tokens[i].equals("from") || (isInsert && tokens[i].equals("into")) || (isUpdate && i == 0))
             {
                 table = tokens[i + 1];
                 break;
@@ -43,8 +48,13 @@ public class SQLQuery
 
         if (table.endsWith(";"))
             table = table.substring(0, table.length() - 1);
+        if (table.contains("("))
+            table = table.substring(0, table.indexOf("("));
 
         DBMap dbMap = DBMap.getDBMapByTableName(table);
-        return new SQLQuery(sql, dbMap, isCreate, isSelect, isUpdate, isDelete);
+        SQLQuery sqlQuery = new SQLQuery(sql, dbMap, isCreate, isSelect, isUpdate, isDelete);
+        sqlQuery.tableName = table;
+        sqlQuery.isInsert = isInsert;
+        return sqlQuery;
     }
 }
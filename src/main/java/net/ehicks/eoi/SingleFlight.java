@@ -0,0 +1,80 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Counter;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent loads of the same key: callers arriving while the first is still loading share its
+ * result.
+ */
+public class SingleFlight
+{
+    public static boolean enabled = true;
+
+    private static final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private static final Counter coalesced = Metrics.getMetricRegistry().counter("eoi.singleFlight.coalesced");
+    private static final Counter loads = Metrics.getMetricRegistry().counter("eoi.singleFlight.loads");
+    private static final ThreadLocal<Set<Object>> leading = ThreadLocal.withInitial(HashSet::new);
+
+    public static <T> T execute(Object key, Supplier<T> loader)
+    {
+        if (!enabled || leading.get().contains(key))
+            return loader.get();
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null)
+        {
+            coalesced.inc();
+            try
+            {
+                // the key identifies the load, so whoever started it produces the same type
+                @SuppressWarnings("unchecked")
+                T result = (T) existing.join();
+                return result;
+            }
+            catch (CompletionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+
+        loads.inc();
+        leading.get().add(key);
+        try
+        {
+            T result = loader.get();
+            future.complete(result);
+            return result;
+        }
+        catch (RuntimeException | Error e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            leading.get().remove(key);
+            inFlight.remove(key, future);
+        }
+    }
+
+    public static long getCoalescedCount()
+    {
+        return coalesced.getCount();
+    }
+
+    public static int getInFlightCount()
+    {
+        return inFlight.size();
+    }
+}
@@ -1,14 +1,19 @@
 package net.ehicks.eoi.diagnostic;
 
+import net.ehicks.eoi.CachePolicy;
+import net.ehicks.eoi.DBMap;
 import net.ehicks.eoi.EOI;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 
 @Entity
+@NamedNativeQueries({
+        @NamedNativeQuery(name = "Audit.getAll", query = "select * from audits"),
+        @NamedNativeQuery(name = "Audit.getByObjectKey", query = "select * from audits where object_key = ? order by id")
+})
+@CachePolicy(cached = false)
 @Table(name = "audits")
 public class Audit implements Serializable
 {
@@ -62,17 +67,63 @@ public class Audit implements Serializable
 
     public static List<Audit> getAll()
     {
-        return EOI.executeQuery("select * from audits");
+        return EOI.executeNamedQuery("Audit.getAll");
+    }
+
+    public static List<Audit> getByObjectKey(String objectKey)
+    {
+        return EOI.executeNamedQuery("Audit.getByObjectKey", Collections.singletonList(objectKey));
     }
 
     public static List<Audit> getAllUpdates()
     {
-        return EOI.executeQuery("select * from audits where event_type='UPDATE'");
+        return EOI.executeCachedQuery("select * from audits where event_type='UPDATE'");
     }
 
     public static Audit getById(Long id)
     {
-        return EOI.executeQueryOneResult("select * from audits where id=?", Arrays.asList(id));
+        return EOI.findById(Audit.class, id);
+    }
+
+    /**
+     * @return audited objects by objectKey, objects that no longer exist are left out
+     */
+    public static Map<String, Object> getAuditedObjects(List<Audit> audits)
+    {
+        Map<DBMap, Set<Long>> idsByDbMap = new HashMap<>();
+        for (Audit audit : audits)
+        {
+            int separator = audit.getObjectKey().lastIndexOf(':');
+            DBMap dbMap = separator == -1 ? null : DBMap.getDBMapByClassName(audit.getObjectKey().substring(0, separator));
+            if (dbMap == null)
+                continue;
+
+            // composite and non-numeric keys can't be loaded by id, skip them
+            Long id = parseId(audit.getObjectKey().substring(separator + 1));
+            if (id != null)
+                idsByDbMap.computeIfAbsent(dbMap, k -> new HashSet<>()).add(id);
+        }
+
+        Map<String, Object> auditedObjects = new HashMap<>();
+        for (Map.Entry<DBMap, Set<Long>> entry : idsByDbMap.entrySet())
+        {
+            Class<?> clazz = entry.getKey().clazz;
+            for (Object object : EOI.findAllByIds(clazz, entry.getValue()))
+                auditedObjects.put(object.toString(), object);
+        }
+        return auditedObjects;
+    }
+
+    private static Long parseId(String id)
+    {
+        try
+        {
+            return Long.valueOf(id);
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
     }
 
     // -------- Getters / Setters ----------
@@ -1,14 +1,17 @@
 package net.ehicks.eoi.diagnostic;
 
+import net.ehicks.eoi.CacheIndexed;
+import net.ehicks.eoi.CachePolicy;
 import net.ehicks.eoi.EOI;
 
 import javax.persistence.*;
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
 @Entity
+@NamedNativeQuery(name = "Project.getAll", query = "select * from projects")
+@CachePolicy(maxEntries = 10_000, ttlSeconds = 3600, watermarkColumn = "last_updated_on")
 @Table(name = "projects")
 public class Project implements Serializable
 {
@@ -16,9 +19,11 @@ public class Project implements Serializable
     @Column(name = "id", updatable = false, nullable = false, columnDefinition = "bigint not null auto_increment primary key")
     private Long id;
 
+    @CacheIndexed(sorted = true)
     @Column(name = "name", nullable = false, unique = true)
     private String name = "";
 
+    @CacheIndexed
     @Column(name = "prefix", nullable = false, unique = true)
     private String prefix = "";
 
@@ -51,12 +56,22 @@ public class Project implements Serializable
 
     public static List<Project> getAll()
     {
-        return EOI.executeQuery("select * from projects");
+        return EOI.executeNamedQuery("Project.getAll");
     }
 
     public static Project getById(Long id)
     {
-        return EOI.executeQueryOneResult("select * from projects where id=?", Arrays.asList(id));
+        return EOI.findById(Project.class, id);
+    }
+
+    public static Project getByName(String name)
+    {
+        return EOI.findOneByIndex(Project.class, "name", name);
+    }
+
+    public static Project getByPrefix(String prefix)
+    {
+        return EOI.findOneByIndex(Project.class, "prefix", prefix);
     }
 
     // -------- Getters / Setters ----------
@@ -0,0 +1,94 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.beans.Issue;
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssociationsTest
+{
+    private long alpha;
+    private long beta;
+    private long gamma;
+
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        alpha = FindByIdTest.insertProject("alpha");
+        beta = FindByIdTest.insertProject("beta");
+        gamma = FindByIdTest.insertProject("gamma");
+        insertIssue(alpha, "a1");
+        insertIssue(alpha, "a2");
+        insertIssue(beta, "b1");
+        insertIssue(null, "orphan");
+        insertIssue(999L, "dangling");
+    }
+
+    @Test
+    void loadReferencesResolvesEachForeignKeyOnce()
+    {
+        List<Issue> issues = Query.from(Issue.class).orderBy("id").list();
+
+        Map<Object, Project> projects = EOI.loadReferences(issues, "projectId");
+
+        assertEquals(new HashSet<>(Arrays.<Object>asList(alpha, beta)), projects.keySet());
+        assertEquals("alpha", projects.get(alpha).getName());
+        assertSame(EOI.findById(Project.class, beta), projects.get(beta));
+    }
+
+    @Test
+    void loadReferencingGroupsChildrenByParent()
+    {
+        List<Project> projects = Query.from(Project.class).orderBy("id").list();
+
+        Map<Object, List<Issue>> issues = EOI.loadReferencing(projects, Issue.class, "projectId");
+
+        assertEquals(Arrays.asList("a1", "a2"), getTitles(issues.get(alpha)));
+        assertEquals(Collections.singletonList("b1"), getTitles(issues.get(beta)));
+        assertTrue(issues.get(gamma).isEmpty());
+    }
+
+    @Test
+    void loadReferencingIsAnsweredFromACompleteRegion()
+    {
+        CachePreloader.preload(DBMap.getDBMapByClass(Issue.class));
+        List<Project> projects = Query.from(Project.class).orderBy("id").list();
+        Issue cached = Query.from(Issue.class).eq("title", "b1").first();
+
+        Map<Object, List<Issue>> issues = EOI.loadReferencing(projects, Issue.class, "projectId");
+
+        assertSame(cached, issues.get(beta).get(0));
+        assertEquals(2, issues.get(alpha).size());
+    }
+
+    @Test
+    void fieldsThatAreNotReferencesAreRejected()
+    {
+        List<Issue> issues = Query.from(Issue.class).list();
+
+        assertThrows(IllegalArgumentException.class, () -> EOI.loadReferences(issues, "title"));
+        assertThrows(IllegalArgumentException.class, () -> EOI.loadReferencing(issues, Issue.class, "projectId"));
+    }
+
+    private static void insertIssue(Long projectId, String title)
+    {
+        Issue issue = new Issue();
+        issue.setProjectId(projectId);
+        issue.setTitle(title);
+        EOI.insert(issue, TestDatabase.AUDIT_USER);
+    }
+
+    private static List<String> getTitles(List<Issue> issues)
+    {
+        List<String> titles = new ArrayList<>();
+        for (Issue issue : issues)
+            titles.add(issue.getTitle());
+        Collections.sort(titles);
+        return titles;
+    }
+}
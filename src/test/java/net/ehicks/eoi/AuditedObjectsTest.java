@@ -0,0 +1,55 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Audit;
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditedObjectsTest
+{
+    @BeforeEach
+    void reset()
+    {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void auditedObjectsAreResolvedPerClass()
+    {
+        long alpha = FindByIdTest.insertProject("alpha");
+        long beta = FindByIdTest.insertProject("beta");
+        EOI.executeDelete(EOI.findById(Project.class, beta), TestDatabase.AUDIT_USER);
+
+        List<Audit> audits = Audit.getAll();
+        Map<String, Object> audited = Audit.getAuditedObjects(audits);
+
+        assertFalse(audits.isEmpty());
+        assertEquals(Collections.singleton("Project:" + alpha), audited.keySet());
+        assertSame(EOI.findById(Project.class, alpha), audited.get("Project:" + alpha));
+    }
+
+    @Test
+    void keysThatAreNotNumericIdsAreSkipped()
+    {
+        long alpha = FindByIdTest.insertProject("alpha");
+        List<Audit> audits = new ArrayList<>();
+        for (String objectKey : Arrays.asList("Project:" + alpha, "Project:1:2", "Project:abc", "Project:"))
+        {
+            Audit audit = new Audit();
+            audit.setObjectKey(objectKey);
+            audits.add(audit);
+        }
+
+        Map<String, Object> audited = Audit.getAuditedObjects(audits);
+
+        assertEquals(Collections.singleton("Project:" + alpha), audited.keySet());
+    }
+}
@@ -0,0 +1,77 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Counter;
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchLoaderTest
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    void enable()
+    {
+        TestDatabase.reset();
+        for (String name : new String[]{"alpha", "beta", "gamma"})
+            ids.add(FindByIdTest.insertProject(name));
+        EOICache.clear();
+        BatchLoader.enabled = true;
+        BatchLoader.windowMicros = 200_000;
+    }
+
+    @AfterEach
+    void disable()
+    {
+        executor.shutdownNow();
+        BatchLoader.enabled = false;
+        BatchLoader.windowMicros = 500;
+    }
+
+    @Test
+    void concurrentLookupsShareOneQuery() throws Exception
+    {
+        Counter batches = Metrics.getMetricRegistry().counter("eoi.batchLoader.batches");
+        long before = batches.getCount();
+
+        List<Future<Project>> futures = new ArrayList<>();
+        for (long id : ids)
+            futures.add(executor.submit(() -> EOI.findById(Project.class, id)));
+        Future<Project> missing = executor.submit(() -> EOI.findById(Project.class, 999L));
+
+        for (int i = 0; i < ids.size(); i++)
+            assertEquals(ids.get(i), futures.get(i).get(5, TimeUnit.SECONDS).getId());
+        assertNull(missing.get(5, TimeUnit.SECONDS));
+        assertEquals(before + 1, batches.getCount());
+        assertTrue(EOICache.isKnownAbsent(CacheKey.of(DBMap.getDBMapByClass(Project.class), 999L)));
+    }
+
+    @Test
+    void failedQueryReturnsNullToEveryCaller() throws Exception
+    {
+        EOI.executeUpdate("alter table projects rename to projects_moved");
+        try
+        {
+            List<Future<Project>> futures = new ArrayList<>();
+            for (long id : ids)
+                futures.add(executor.submit(() -> EOI.findById(Project.class, id)));
+
+            for (Future<Project> future : futures)
+                assertNull(future.get(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            EOI.executeUpdate("alter table projects_moved rename to projects");
+        }
+
+        assertFalse(EOICache.isKnownAbsent(CacheKey.of(DBMap.getDBMapByClass(Project.class), ids.get(0))));
+    }
+}
@@ -0,0 +1,62 @@
+package net.ehicks.eoi;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheKeyTest
+{
+    private static DBMap compositeMap()
+    {
+        DBMap dbMap = new DBMap();
+        dbMap.className = "Composite";
+        dbMap.tableName = "composites";
+        dbMap.fields.add(pkField(dbMap, "account_id", DBMapField.LONG));
+        dbMap.fields.add(pkField(dbMap, "amount", DBMapField.DECIMAL));
+        dbMap.fields.add(pkField(dbMap, "posted_on", DBMapField.TIMESTAMP));
+        return dbMap;
+    }
+
+    private static DBMapField pkField(DBMap dbMap, String columnName, String type)
+    {
+        DBMapField field = new DBMapField();
+        field.dbMap = dbMap;
+        field.columnName = columnName;
+        field.fieldName = columnName;
+        field.type = type;
+        field.primaryKey = true;
+        return field;
+    }
+
+    @Test
+    void compositeValuesAreNormalized()
+    {
+        DBMap dbMap = compositeMap();
+        long time = 1_500_000_000_000L;
+
+        CacheKey fromGetters = CacheKey.of(dbMap, new Object[]{1L, new BigDecimal("2.50"), new Date(time)});
+        CacheKey fromDriver = CacheKey.of(dbMap, new Object[]{1, new BigDecimal("2.5"), new Timestamp(time)});
+
+        assertEquals(fromGetters, fromDriver);
+        assertEquals(fromGetters.hashCode(), fromDriver.hashCode());
+    }
+
+    @Test
+    void keysOfDifferentMapsDiffer()
+    {
+        CacheKey first = CacheKey.of(compositeMap(), new Object[]{1L, BigDecimal.ONE, new Date(0)});
+        CacheKey second = CacheKey.of(compositeMap(), new Object[]{1L, BigDecimal.ONE, new Date(0)});
+
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void nullValueHasNoKey()
+    {
+        assertNull(CacheKey.of(compositeMap(), null));
+    }
+}
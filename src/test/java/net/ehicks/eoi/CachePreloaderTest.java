@@ -0,0 +1,83 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachePreloaderTest
+{
+    private DBMap dbMap;
+
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        dbMap = DBMap.getDBMapByClass(Project.class);
+        for (String name : new String[]{"alpha", "beta", "gamma"})
+            FindByIdTest.insertProject(name);
+        EOICache.clear();
+    }
+
+    @AfterEach
+    void restore()
+    {
+        CachePreloader.threads = 4;
+        CachePreloader.pageSize = 1000;
+        CachePreloader.maxCacheWeightBytes = 512L * 1024 * 1024;
+        dbMap.getCacheRegion().enabled = true;
+    }
+
+    @Test
+    void preloadCachesEveryRowAndMarksTheRegionComplete()
+    {
+        assertEquals(3, CachePreloader.preload(dbMap));
+
+        assertEquals(3, dbMap.getCacheRegion().size());
+        assertTrue(dbMap.getCacheRegion().isComplete());
+        assertTrue(CachePreloader.getLoadedWeight() > 0);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void orderByOverloadStillLoadsTheTable()
+    {
+        CachePreloader.preload(dbMap, "order by name desc");
+
+        assertEquals(3, dbMap.getCacheRegion().size());
+    }
+
+    @Test
+    void weightIsCountedPerRun()
+    {
+        CachePreloader.preload(dbMap);
+        long weight = CachePreloader.getLoadedWeight();
+
+        CachePreloader.preload(dbMap);
+
+        assertEquals(weight, CachePreloader.getLoadedWeight());
+    }
+
+    @Test
+    void uncachedEntitiesAreSkipped()
+    {
+        CachePreloader.preload(dbMap);
+        dbMap.getCacheRegion().enabled = false;
+
+        assertEquals(0, CachePreloader.preload(dbMap));
+        assertEquals(0, CachePreloader.getLoadedWeight());
+    }
+
+    @Test
+    void weightBudgetStopsLoadingAndLeavesTheRegionIncomplete()
+    {
+        CachePreloader.threads = 1;
+        CachePreloader.pageSize = 1;
+        CachePreloader.maxCacheWeightBytes = 1;
+
+        assertEquals(1, CachePreloader.preload(dbMap));
+        assertFalse(dbMap.getCacheRegion().isComplete());
+    }
+}
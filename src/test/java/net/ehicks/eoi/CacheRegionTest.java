@@ -0,0 +1,95 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheRegionTest
+{
+    private DBMap dbMap;
+    private CacheRegion region;
+
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        dbMap = DBMap.getDBMapByClass(Project.class);
+        region = dbMap.getCacheRegion();
+    }
+
+    @AfterEach
+    void restorePolicy()
+    {
+        region.applyPolicy(Project.class.getAnnotation(CachePolicy.class));
+    }
+
+    @Test
+    void lruEvictsLeastRecentlyRead()
+    {
+        region.maxEntries = 10;
+        region.eviction = CachePolicy.Eviction.LRU;
+        for (long id = 1; id <= 10; id++)
+            EOICache.set(key(id), project(id));
+        for (long id = 1; id <= 5; id++)
+            EOICache.get(key(id));
+
+        EOICache.set(key(11), project(11));
+
+        assertEquals(10, region.size());
+        assertNull(EOICache.get(key(6)));
+        assertNotNull(EOICache.get(key(1)));
+    }
+
+    @Test
+    void fifoEvictsOldestInsertion()
+    {
+        region.maxEntries = 10;
+        region.eviction = CachePolicy.Eviction.FIFO;
+        for (long id = 1; id <= 10; id++)
+            EOICache.set(key(id), project(id));
+        for (long id = 1; id <= 5; id++)
+            EOICache.get(key(id));
+
+        EOICache.set(key(11), project(11));
+
+        assertNull(EOICache.get(key(1)));
+        assertNotNull(EOICache.get(key(6)));
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws InterruptedException
+    {
+        region.ttlMillis = 1;
+        EOICache.set(key(1), project(1));
+        Thread.sleep(5);
+
+        assertNull(EOICache.get(key(1)));
+        assertFalse(region.containsKey(key(1)));
+    }
+
+    @Test
+    void uncachedEntityAlwaysGoesToTheDatabase()
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        region.enabled = false;
+
+        assertNotSame(EOI.findById(Project.class, id), EOI.findById(Project.class, id));
+        assertEquals(0, region.size());
+    }
+
+    private CacheKey key(long id)
+    {
+        return CacheKey.of(dbMap, id);
+    }
+
+    private static Project project(long id)
+    {
+        Project project = new Project();
+        project.setId(id);
+        project.setName("project " + id);
+        return project;
+    }
+}
@@ -0,0 +1,112 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheSnapshotTest
+{
+    private DBMap dbMap;
+    private Path path;
+    private long alpha;
+    private long beta;
+
+    @BeforeEach
+    void setUp() throws IOException
+    {
+        TestDatabase.reset();
+        dbMap = DBMap.getDBMapByClass(Project.class);
+        path = Files.createTempDirectory("eoi").resolve("eoi.snapshot");
+        alpha = insertProject("alpha");
+        beta = insertProject("beta");
+        EOI.findById(Project.class, alpha);
+        EOI.findById(Project.class, beta);
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException
+    {
+        Files.deleteIfExists(path);
+        Files.delete(path.getParent());
+        dbMap.getCacheRegion().applyPolicy(Project.class.getAnnotation(CachePolicy.class));
+        CacheSnapshot.restoreWithoutWatermark = false;
+    }
+
+    @Test
+    void unchangedTableIsRestored()
+    {
+        CacheSnapshot.save(path);
+        EOICache.clear();
+
+        restore();
+
+        assertEquals(2, dbMap.getCacheRegion().size());
+        assertEquals("alpha", ((Project) EOICache.get(CacheKey.of(dbMap, alpha))).getName());
+    }
+
+    @Test
+    void rowsUpdatedSinceTheSaveAreSkipped()
+    {
+        CacheSnapshot.save(path);
+        EOICache.clear();
+        EOI.executeUpdate("update projects set name = 'renamed', last_updated_on = '" + LocalDate.now() + "' where id = " + beta);
+
+        restore();
+
+        assertNotNull(EOICache.get(CacheKey.of(dbMap, alpha)));
+        assertNull(EOICache.get(CacheKey.of(dbMap, beta)));
+    }
+
+    @Test
+    void entitiesWithoutWatermarkColumnNeedOptIn()
+    {
+        dbMap.getCacheRegion().watermarkColumn = "";
+        CacheSnapshot.save(path);
+        EOICache.clear();
+
+        restore();
+        assertEquals(0, dbMap.getCacheRegion().size());
+
+        CacheSnapshot.restoreWithoutWatermark = true;
+        restore();
+        assertEquals(2, dbMap.getCacheRegion().size());
+    }
+
+    @Test
+    void snapshotCanBeReplacedAfterRestore() throws Exception
+    {
+        CacheSnapshot.save(path);
+        restore();
+        long size = Files.size(path);
+
+        EOI.findById(Project.class, insertProject("gamma"));
+        CacheSnapshot.save(path);
+
+        assertTrue(Files.size(path) > size);
+        assertFalse(Files.exists(path.resolveSibling("eoi.snapshot.tmp")));
+    }
+
+    private void restore()
+    {
+        CacheSnapshot.restored = false;
+        CacheSnapshot.restore(path);
+    }
+
+    private static long insertProject(String name)
+    {
+        Project project = new Project();
+        project.setName(name);
+        project.setPrefix(name.toUpperCase());
+        project.setLastUpdatedOn(Date.valueOf(LocalDate.now().minusDays(1)));
+        return EOI.insert(project, TestDatabase.AUDIT_USER);
+    }
+}
@@ -0,0 +1,78 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTransactionTest
+{
+    private long id;
+
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        id = FindByIdTest.insertProject("alpha");
+    }
+
+    @AfterEach
+    void endTransaction()
+    {
+        if (EOI.isInTransaction())
+            EOI.rollback();
+    }
+
+    @Test
+    void writesAreOnlySharedOnCommit() throws Exception
+    {
+        Project cached = EOI.findById(Project.class, id);
+        Project copy = EOI.findById(Project.class, id);
+
+        EOI.startTransaction();
+        Project changed = new Project();
+        changed.setId(id);
+        changed.setName("renamed");
+        changed.setPrefix(copy.getPrefix());
+        EOI.update(changed, TestDatabase.AUDIT_USER);
+
+        assertEquals("renamed", EOI.findById(Project.class, id).getName());
+        Project otherThread = CompletableFuture.supplyAsync(() -> EOI.findById(Project.class, id)).get();
+        assertSame(cached, otherThread);
+
+        EOI.commit();
+
+        assertFalse(EOI.isInTransaction());
+        assertEquals("renamed", EOI.findById(Project.class, id).getName());
+    }
+
+    @Test
+    void rollbackEvictsSharedInstancesModifiedInPlace()
+    {
+        Project cached = EOI.findById(Project.class, id);
+
+        EOI.startTransaction();
+        cached.setName("renamed");
+        EOI.update(cached, TestDatabase.AUDIT_USER);
+        EOI.rollback();
+
+        Project reloaded = EOI.findById(Project.class, id);
+        assertNotSame(cached, reloaded);
+        assertEquals("alpha", reloaded.getName());
+    }
+
+    @Test
+    void rollbackOfInsertLeavesNothingCached()
+    {
+        EOI.startTransaction();
+        long inserted = FindByIdTest.insertProject("beta");
+        assertNotNull(EOI.findById(Project.class, inserted));
+        EOI.rollback();
+
+        assertNull(EOI.findById(Project.class, inserted));
+    }
+}
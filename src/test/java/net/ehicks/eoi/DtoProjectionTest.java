@@ -0,0 +1,114 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.beans.ConstructorProperties;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DtoProjectionTest
+{
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        FindByIdTest.insertProject("alpha");
+        FindByIdTest.insertProject("beta");
+    }
+
+    @AfterEach
+    void endTransaction()
+    {
+        if (EOI.isInTransaction())
+            EOI.rollback();
+    }
+
+    @Test
+    void mapsColumnsIntoConstructor()
+    {
+        List<NameAndPrefix> rows = EOI.executeProjection(NameAndPrefix.class, "select name, prefix from projects order by name");
+
+        assertEquals(2, rows.size());
+        assertEquals("alpha", rows.get(0).name);
+        assertEquals("ALPHA", rows.get(0).prefix);
+        assertEquals("beta", rows.get(1).name);
+    }
+
+    @Test
+    void mapsColumnsIntoFieldsIgnoringUnderscores()
+    {
+        List<ProjectRow> rows = Query.from(Project.class).where("name", Query.Op.EQ, "beta").listAs(ProjectRow.class);
+
+        assertEquals(1, rows.size());
+        assertTrue(rows.get(0).id > 0);
+        assertEquals("BETA", rows.get(0).prefix);
+        assertNull(rows.get(0).inceptDate);
+    }
+
+    @Test
+    void unmatchedColumnIsRejected()
+    {
+        assertThrows(IllegalArgumentException.class,
+                () -> EOI.executeProjection(ProjectRow.class, "select name, 1 as bogus from projects"));
+    }
+
+    @Test
+    void streamRunsOnItsOwnConnectionOutsideTransaction()
+    {
+        List<String> names = new ArrayList<>();
+        long rows = Query.from(Project.class).orderBy("name").streamAs(ProjectRow.class, row -> {
+            // the consumer's own queries must not join the streaming connection
+            assertFalse(EOI.isInTransaction());
+            names.add(EOI.findById(Project.class, row.id).getName());
+        });
+
+        assertEquals(2, rows);
+        assertEquals(Arrays.asList("alpha", "beta"), names);
+        assertFalse(EOI.isInTransaction());
+    }
+
+    @Test
+    void streamSeesUncommittedRowsInsideTransaction()
+    {
+        EOI.startTransaction();
+        FindByIdTest.insertProject("gamma");
+
+        List<String> names = new ArrayList<>();
+        Query.from(Project.class).orderBy("name").streamAs(ProjectRow.class, row -> names.add(row.name));
+
+        assertEquals(Arrays.asList("alpha", "beta", "gamma"), names);
+        assertTrue(EOI.isInTransaction());
+
+        EOI.rollback();
+        assertEquals(2, Query.from(Project.class).listAs(ProjectRow.class).size());
+    }
+
+    static class NameAndPrefix
+    {
+        final String name;
+        final String prefix;
+
+        @ConstructorProperties({"name", "prefix"})
+        NameAndPrefix(String name, String prefix)
+        {
+            this.name = name;
+            this.prefix = prefix;
+        }
+    }
+
+    static class ProjectRow
+    {
+        long id;
+        String name;
+        String prefix;
+        Date inceptDate;
+        Date lastUpdatedOn;
+    }
+}
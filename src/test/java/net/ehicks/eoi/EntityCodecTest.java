@@ -0,0 +1,37 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityCodecTest
+{
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.start();
+    }
+
+    @Test
+    void utf8LengthMatchesEncoding()
+    {
+        for (String value : new String[]{"", "ascii", "caf\u00e9", "\u65e5\u672c\u8a9e", "emoji \ud83d\ude00", "lone \ud83d"})
+            assertEquals(value.getBytes(StandardCharsets.UTF_8).length, EntityCodec.getUtf8Length(value), value);
+    }
+
+    @Test
+    void encodedSizeMatchesEncodingForNonLatinText()
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(Project.class);
+        Project project = new Project();
+        project.setId(1L);
+        project.setName("\u65e5\u672c\u8a9e\u306e\u30d7\u30ed\u30b8\u30a7\u30af\u30c8");
+        project.setPrefix("\u65e5\u672c");
+
+        assertEquals(EntityCodec.encode(dbMap, project).length, EntityCodec.getEncodedSize(dbMap, project));
+    }
+}
@@ -0,0 +1,64 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FindByIdTest
+{
+    static long insertProject(String name)
+    {
+        Project project = new Project();
+        project.setName(name);
+        project.setPrefix(name.toUpperCase());
+        return EOI.insert(project, TestDatabase.AUDIT_USER);
+    }
+
+    @BeforeEach
+    void reset()
+    {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void secondLookupIsServedFromCache()
+    {
+        long id = insertProject("alpha");
+
+        Project first = EOI.findById(Project.class, id);
+        int hits = EOICache.hits.get();
+        Project second = EOI.findById(Project.class, id);
+
+        assertEquals("alpha", first.getName());
+        assertSame(first, second);
+        assertEquals(hits + 1, EOICache.hits.get());
+    }
+
+    @Test
+    void missingRowIsNull()
+    {
+        assertNull(EOI.findById(Project.class, 12345L));
+    }
+
+    @Test
+    void findAllByIdsFollowsRequestedOrder()
+    {
+        long a = insertProject("alpha");
+        long b = insertProject("beta");
+        long c = insertProject("gamma");
+        EOI.findById(Project.class, b);
+
+        List<Project> projects = EOI.findAllByIds(Project.class, Arrays.asList(c, 999L, a, b, c));
+
+        assertEquals(3, projects.size());
+        assertEquals(c, (long) projects.get(0).getId());
+        assertEquals(a, (long) projects.get(1).getId());
+        assertEquals(b, (long) projects.get(2).getId());
+        assertSame(EOI.findById(Project.class, b), projects.get(2));
+    }
+}
@@ -0,0 +1,81 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HydrationMetricsTest
+{
+    private int maxFingerprints;
+
+    @BeforeEach
+    void setUp()
+    {
+        maxFingerprints = Metrics.maxFingerprints;
+        QueryTiming.reset();
+        HydrationMetrics.reset();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        Metrics.maxFingerprints = maxFingerprints;
+        QueryTiming.reset();
+        HydrationMetrics.reset();
+    }
+
+    private static HydrationMetrics.Tally tally(long rows)
+    {
+        HydrationMetrics.Tally tally = HydrationMetrics.start();
+        tally.rows = rows;
+        return tally;
+    }
+
+    @Test
+    void queriesAreCountedPerEntityAndStatement()
+    {
+        TestDatabase.reset();
+        FindByIdTest.insertProject("alpha");
+        FindByIdTest.insertProject("beta");
+        EOICache.clear();
+
+        EOI.executeQuery("select * from projects");
+
+        MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+        String className = DBMap.getDBMapByClass(Project.class).className;
+        assertEquals(2, metricRegistry.counter("eoi.hydration.rows.entity." + className).getCount());
+        String fingerprint = SQLFingerprint.of("select * from projects");
+        assertEquals(2, metricRegistry.counter("eoi.hydration.rows.query." + fingerprint).getCount());
+    }
+
+    @Test
+    void statementsPastTheCapShareOther()
+    {
+        Metrics.maxFingerprints = 1;
+        HydrationMetrics.record(tally(1), null, "a");
+        HydrationMetrics.record(tally(2), null, "b");
+        HydrationMetrics.record(tally(3), null, "c");
+
+        MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+        assertEquals(1, metricRegistry.counter("eoi.hydration.rows.query.a").getCount());
+        assertEquals(5, metricRegistry.counter("eoi.hydration.rows.query." + QueryTiming.OTHER).getCount());
+        assertFalse(metricRegistry.getCounters().containsKey("eoi.hydration.rows.query.b"));
+    }
+
+    @Test
+    void allocationHistogramKeepsABoundedSample()
+    {
+        HydrationMetrics.record(tally(1), null, "a");
+
+        Histogram histogram = Metrics.getMetricRegistry().getHistograms().get("eoi.hydration.allocatedBytes.query.a");
+        for (int i = 0; i < Metrics.reservoirSize * 4; i++)
+            histogram.update(i);
+
+        assertEquals(Metrics.reservoirSize, histogram.getSnapshot().size());
+    }
+}
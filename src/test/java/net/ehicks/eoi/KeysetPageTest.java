@@ -0,0 +1,92 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetPageTest
+{
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        for (int i = 0; i < 23; i++)
+        {
+            Project project = new Project();
+            project.setName(String.format("project-%02d", (i * 7) % 23));
+            project.setPrefix("P" + i);
+            project.setInceptDate(Date.valueOf(LocalDate.of(2018, 1, 1 + i % 4)));
+            EOI.insert(project, TestDatabase.AUDIT_USER);
+        }
+    }
+
+    @Test
+    void uniformOrderingUsesRowValueComparison()
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(Project.class);
+        List<DBMapField> fields = Arrays.asList(dbMap.getFieldByFieldName("name"), dbMap.getPKFields().get(0));
+        List<Object> args = new ArrayList<>();
+
+        String predicate = SQLGenerator.getSeekPredicate(fields, Arrays.asList(true, true), Arrays.asList("b", 2L), args);
+
+        assertEquals("(name, id) < (?, ?)", predicate);
+        assertEquals(Arrays.asList("b", 2L), args);
+    }
+
+    @Test
+    void mixedOrderingExpandsIntoOrTerms()
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(Project.class);
+        List<DBMapField> fields = Arrays.asList(dbMap.getFieldByFieldName("inceptDate"), dbMap.getFieldByFieldName("name"), dbMap.getPKFields().get(0));
+        List<Object> args = new ArrayList<>();
+
+        String predicate = SQLGenerator.getSeekPredicate(fields, Arrays.asList(false, true, true), Arrays.asList("d", "b", 2L), args);
+
+        assertEquals("((incept_date > ?) or (incept_date = ? and name < ?) or (incept_date = ? and name = ? and id < ?))", predicate);
+        assertEquals(Arrays.asList("d", "d", "b", "d", "b", 2L), args);
+    }
+
+    @Test
+    void pagesCoverEveryRowOnceInOrder()
+    {
+        assertPagesMatch(Query.from(Project.class).orderByDesc("name"), Query.from(Project.class).orderByDesc("name"));
+        // ties on incept date are broken by the primary key seek() appends
+        assertPagesMatch(Query.from(Project.class).orderBy("inceptDate"), Query.from(Project.class).orderBy("inceptDate").orderBy("id"));
+        assertPagesMatch(Query.from(Project.class).orderBy("inceptDate").orderByDesc("name"), Query.from(Project.class).orderBy("inceptDate").orderByDesc("name"));
+    }
+
+    @Test
+    void tokenOfAnotherQueryIsRejected()
+    {
+        String token = Query.from(Project.class).orderBy("name").seek(null, 5).nextToken;
+
+        assertThrows(IllegalArgumentException.class, () -> Query.from(Project.class).orderBy("prefix").seek(token, 5));
+        assertThrows(IllegalArgumentException.class, () -> Query.from(Project.class).orderBy("name").seek("not-a-token", 5));
+    }
+
+    private static void assertPagesMatch(Query<Project> query, Query<Project> fullyOrdered)
+    {
+        List<Project> expected = fullyOrdered.list();
+        List<Project> paged = new ArrayList<>();
+        String token = null;
+        do
+        {
+            KeysetPage<Project> page = query.seek(token, 5);
+            assertTrue(page.rows.size() <= 5);
+            paged.addAll(page.rows);
+            token = page.nextToken;
+        }
+        while (token != null);
+
+        assertEquals(23, expected.size());
+        assertEquals(QueryTest.getNames(expected), QueryTest.getNames(paged));
+    }
+}
@@ -0,0 +1,53 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KnownAbsentTest
+{
+    private DBMap dbMap;
+
+    @BeforeEach
+    void reset()
+    {
+        TestDatabase.reset();
+        dbMap = DBMap.getDBMapByClass(Project.class);
+    }
+
+    @Test
+    void missingRowIsRememberedUntilInserted()
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        CacheKey next = CacheKey.of(dbMap, id + 1);
+
+        assertNull(EOI.findById(Project.class, id + 1));
+        assertTrue(EOICache.isKnownAbsent(next));
+
+        assertEquals(id + 1, FindByIdTest.insertProject("beta"));
+        assertFalse(EOICache.isKnownAbsent(next));
+        assertEquals("beta", EOI.findById(Project.class, id + 1).getName());
+    }
+
+    @Test
+    void failedQueryIsNotRecordedAsAbsent()
+    {
+        EOI.executeUpdate("alter table projects rename to projects_moved");
+        try
+        {
+            assertNull(EOI.findById(Project.class, 1L));
+            assertTrue(EOI.findAllByIds(Project.class, Collections.singletonList(2L)).isEmpty());
+        }
+        finally
+        {
+            EOI.executeUpdate("alter table projects_moved rename to projects");
+        }
+
+        assertFalse(EOICache.isKnownAbsent(CacheKey.of(dbMap, 1L)));
+        assertFalse(EOICache.isKnownAbsent(CacheKey.of(dbMap, 2L)));
+    }
+}
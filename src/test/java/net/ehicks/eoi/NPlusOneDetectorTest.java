@@ -0,0 +1,105 @@
+package net.ehicks.eoi;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NPlusOneDetectorTest
+{
+    private static final String SELECT_BY_ID = "select * from projects where id = ?";
+
+    private long alpha;
+    private long beta;
+
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        alpha = FindByIdTest.insertProject("alpha");
+        beta = FindByIdTest.insertProject("beta");
+    }
+
+    private static void selectById(long id)
+    {
+        EOI.executeQuery(SELECT_BY_ID, Collections.singletonList(id));
+    }
+
+    @Test
+    void repeatedSelectIsReportedOnceAtThreshold()
+    {
+        long detected = Metrics.getMetricRegistry().counter("eoi.nPlusOne.detected").getCount();
+        try (NPlusOneDetector.Scope scope = NPlusOneDetector.open(3, NPlusOneDetector.Mode.WARN))
+        {
+            selectById(alpha);
+            selectById(beta);
+            assertTrue(scope.getReports().isEmpty());
+
+            selectById(alpha);
+            selectById(beta);
+            FindByIdTest.insertProject("gamma");
+
+            assertEquals(1, scope.getReports().size());
+            assertEquals(4, (int) scope.getCounts().get(SQLFingerprint.of(SELECT_BY_ID)));
+            assertEquals(1, scope.getCounts().size());
+        }
+        assertEquals(detected + 1, Metrics.getMetricRegistry().counter("eoi.nPlusOne.detected").getCount());
+    }
+
+    @Test
+    void failModeThrowsFromTheOffendingCall()
+    {
+        try (NPlusOneDetector.Scope scope = NPlusOneDetector.open(2, NPlusOneDetector.Mode.FAIL))
+        {
+            selectById(alpha);
+            assertThrows(IllegalStateException.class, () -> selectById(beta));
+            assertEquals(1, scope.getReports().size());
+        }
+    }
+
+    @Test
+    void nestedScopeRestoresTheOuterOne()
+    {
+        try (NPlusOneDetector.Scope outer = NPlusOneDetector.open(10, NPlusOneDetector.Mode.WARN))
+        {
+            try (NPlusOneDetector.Scope inner = NPlusOneDetector.open(10, NPlusOneDetector.Mode.WARN))
+            {
+                selectById(alpha);
+                assertEquals(1, inner.getCounts().size());
+            }
+            assertTrue(outer.getCounts().isEmpty());
+
+            selectById(alpha);
+            assertEquals(1, outer.getCounts().size());
+        }
+
+        NPlusOneDetector.Scope closed = NPlusOneDetector.open();
+        closed.close();
+        selectById(alpha);
+        assertTrue(closed.getCounts().isEmpty());
+    }
+
+    @Test
+    void boundThreadsCountIntoTheScope() throws Exception
+    {
+        try (NPlusOneDetector.Scope scope = NPlusOneDetector.open(10, NPlusOneDetector.Mode.WARN))
+        {
+            selectById(alpha);
+            CompletableFuture.runAsync(() -> {
+                try (NPlusOneDetector.Scope binding = scope.bind())
+                {
+                    selectById(beta);
+                    // counted into the scope it was bound from, not the binding
+                    assertTrue(binding.getCounts().isEmpty());
+                }
+                // unbound again, not counted
+                selectById(beta);
+            }).get();
+
+            assertEquals(2, (int) scope.getCounts().get(SQLFingerprint.of(SELECT_BY_ID)));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Audit;
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NamedQueryTest
+{
+    @BeforeEach
+    void reset()
+    {
+        TestDatabase.reset();
+    }
+
+    @Test
+    void nativeQueriesAreRegisteredAndTimed()
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        long timed = Metrics.getMetricRegistry().timer("eoi.namedQuery.Audit.getByObjectKey").getCount();
+
+        List<Project> projects = Project.getAll();
+        List<Audit> audits = Audit.getByObjectKey("Project:" + id);
+
+        assertEquals(1, projects.size());
+        assertEquals(id, (long) projects.get(0).getId());
+        assertEquals(1, audits.size());
+        assertEquals(timed + 1, Metrics.getMetricRegistry().timer("eoi.namedQuery.Audit.getByObjectKey").getCount());
+        assertTrue(NamedQueryRegistry.contains("Audit.getAll"));
+    }
+
+    @Test
+    void unknownNameOrWrongArgCountIsRejected()
+    {
+        assertThrows(IllegalArgumentException.class, () -> EOI.executeNamedQuery("Project.missing"));
+        assertThrows(IllegalArgumentException.class, () -> EOI.executeNamedQuery("Audit.getByObjectKey"));
+        assertThrows(IllegalArgumentException.class, () -> EOI.executeNamedQuery("Project.getAll", Collections.singletonList(1)));
+    }
+
+    @Test
+    void everyQueryPreparesAgainstTheSchema()
+    {
+        assertDoesNotThrow(NamedQueryRegistry::validate);
+    }
+}
@@ -0,0 +1,111 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapCacheTest
+{
+    private DBMap dbMap;
+    private int entryBytes;
+
+    @BeforeEach
+    void configure()
+    {
+        TestDatabase.start();
+        dbMap = DBMap.getDBMapByClass(Project.class);
+        entryBytes = EntityCodec.encode(dbMap, project(1)).length;
+        // three slabs of four entries each
+        OffHeapCache.configure(3L * 4 * entryBytes, 4 * entryBytes);
+    }
+
+    @AfterEach
+    void disable()
+    {
+        OffHeapCache.enabled = false;
+        OffHeapCache.clear();
+    }
+
+    @Test
+    void recyclingASlabDropsOnlyTheEntriesStillInIt()
+    {
+        for (long id = 1; id <= 5; id++)
+            put(id);
+        put(1); // moves to the second slab
+        for (long id = 6; id <= 12; id++)
+            put(id);
+
+        for (long id = 2; id <= 4; id++)
+            assertNull(OffHeapCache.get(key(id)));
+        for (long id : new long[]{1, 5, 6, 11, 12})
+            assertEquals(name(id), ((Project) OffHeapCache.get(key(id))).getName());
+        assertEquals(9, OffHeapCache.size());
+    }
+
+    @Test
+    void concurrentReadersNeverSeeAnotherEntrysBytes() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++)
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++)
+                    {
+                        long id = 1 + random.nextInt(40);
+                        if (random.nextBoolean())
+                            put(id);
+                        else
+                        {
+                            Project project = (Project) OffHeapCache.get(key(id));
+                            if (project != null)
+                                assertEquals(name(id), project.getName());
+                        }
+                    }
+                    return null;
+                }));
+            for (Future<?> future : futures)
+                future.get(30, TimeUnit.SECONDS);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        assertTrue(OffHeapCache.size() <= 12);
+    }
+
+    private void put(long id)
+    {
+        OffHeapCache.put(key(id), project(id), 0);
+    }
+
+    private CacheKey key(long id)
+    {
+        return CacheKey.of(dbMap, id);
+    }
+
+    private static Project project(long id)
+    {
+        Project project = new Project();
+        project.setId(id);
+        project.setName(name(id));
+        project.setPrefix(String.format("P%03d", id));
+        return project;
+    }
+
+    // fixed width, so every entry encodes to the same length
+    private static String name(long id)
+    {
+        return String.format("project-%03d", id);
+    }
+}
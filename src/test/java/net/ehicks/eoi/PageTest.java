@@ -0,0 +1,63 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageTest
+{
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        for (String name : new String[]{"page-a", "page-b", "page-c", "page-d", "page-e", "other"})
+            FindByIdTest.insertProject(name);
+    }
+
+    @Test
+    void pageCarriesRowsAndExactTotal()
+    {
+        Page<Project> page = Query.from(Project.class).where("name", Query.Op.LIKE, "page-%").orderBy("name").page(2, 2);
+
+        assertEquals(Arrays.asList("page-c", "page-d"), QueryTest.getNames(page.rows));
+        assertEquals(5, page.total);
+        assertTrue(page.exactTotal);
+    }
+
+    @Test
+    void pagePastTheEndStillCounts()
+    {
+        Page<Project> page = Query.from(Project.class).where("name", Query.Op.LIKE, "page-%").page(10, 2);
+
+        assertTrue(page.rows.isEmpty());
+        assertEquals(5, page.total);
+    }
+
+    @Test
+    void approximateTotalIsReusedUntilItExpires()
+    {
+        Query<Project> query = Query.from(Project.class).where("name", Query.Op.LIKE, "page-%").where("prefix", Query.Op.NE, "");
+        assertEquals(5, query.page(0, 2, false).total);
+
+        FindByIdTest.insertProject("page-f");
+
+        Page<Project> page = query.page(0, 2, false);
+        assertFalse(page.exactTotal);
+        assertEquals(5, page.total);
+        assertEquals(6, query.page(0, 2).total);
+    }
+
+    @Test
+    void projectedPage()
+    {
+        Page<List<Object>> page = Query.from(Project.class).select("name").where("name", Query.Op.LIKE, "page-%").orderByDesc("name").page(0, 1);
+
+        assertEquals(Arrays.<Object>asList("page-e"), page.rows.get(0));
+        assertEquals(5, page.total);
+    }
+}
@@ -0,0 +1,153 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollingInvalidationBusTest
+{
+    private static final String TABLE = "eoi_test_changes";
+
+    private RecordingBus publisher;
+    private RecordingBus subscriber;
+
+    @BeforeEach
+    void start()
+    {
+        TestDatabase.reset();
+        publisher = new RecordingBus();
+        subscriber = new RecordingBus();
+        publisher.start();
+        subscriber.start();
+    }
+
+    @AfterEach
+    void stop()
+    {
+        publisher.stop();
+        subscriber.stop();
+    }
+
+    @Test
+    void publishIsSentOnFlushAndEvictsOnPeers()
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        EOI.findById(Project.class, id);
+        CacheKey key = CacheKey.of(DBMap.getDBMapByClass(Project.class), id);
+
+        publisher.publish(Collections.singletonList(key));
+        subscriber.poll();
+        assertNotNull(EOICache.get(key));
+
+        publisher.flush();
+        subscriber.poll();
+        publisher.poll();
+
+        assertNull(EOICache.get(key));
+        assertEquals(Collections.singletonList(key.encode()), subscriber.received);
+        assertTrue(publisher.received.isEmpty());
+    }
+
+    @Test
+    void rowsAreReceivedInIdOrder()
+    {
+        DBMap dbMap = DBMap.getDBMapByClass(Project.class);
+        List<CacheKey> keys = Arrays.asList(CacheKey.of(dbMap, 1L), CacheKey.of(dbMap, 2L), CacheKey.of(dbMap, 3L));
+        publisher.publish(keys.subList(0, 2));
+        publisher.flush();
+        publisher.publish(keys.subList(2, 3));
+        publisher.flush();
+
+        subscriber.poll();
+
+        List<String> expected = new ArrayList<>();
+        for (CacheKey key : keys)
+            expected.add(key.encode());
+        assertEquals(expected, subscriber.received);
+    }
+
+    @Test
+    void lateCommittedLowerIdIsReceivedOnce() throws SQLException
+    {
+        long lastId = getMaxId();
+        insertChange(lastId + 2, "projects:2");
+        subscriber.poll();
+        assertEquals(Collections.singletonList("projects:2"), subscriber.received);
+
+        // lastId + 1 was allocated first but committed after lastId + 2 had been polled
+        insertChange(lastId + 1, "projects:1");
+        subscriber.poll();
+        subscriber.poll();
+
+        assertEquals(Arrays.asList("projects:2", "projects:1"), subscriber.received);
+    }
+
+    @Test
+    void gapsExpire() throws SQLException
+    {
+        long gapTimeoutMillis = PollingInvalidationBus.gapTimeoutMillis;
+        try
+        {
+            long lastId = getMaxId();
+            insertChange(lastId + 2, "projects:2");
+            subscriber.poll();
+
+            PollingInvalidationBus.gapTimeoutMillis = -1;
+            subscriber.poll();
+            insertChange(lastId + 1, "projects:1");
+            subscriber.poll();
+
+            assertEquals(Collections.singletonList("projects:2"), subscriber.received);
+        }
+        finally
+        {
+            PollingInvalidationBus.gapTimeoutMillis = gapTimeoutMillis;
+        }
+    }
+
+    private static long getMaxId() throws SQLException
+    {
+        try (Connection connection = EOI.cp.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select coalesce(max(id), 0) from " + TABLE))
+        {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static void insertChange(long id, String encodedKey)
+    {
+        EOI.executeUpdate("insert into " + TABLE + " (id, node_id, cache_key, created_on) values (" + id + ", 'peer', '" + encodedKey + "', current_timestamp)");
+    }
+
+    private static class RecordingBus extends PollingInvalidationBus
+    {
+        private final List<String> received = new ArrayList<>();
+
+        private RecordingBus()
+        {
+            super(TABLE, 60 * 60 * 1000, 60 * 60 * 1000);
+        }
+
+        @Override
+        public void receive(String senderNodeId, String encodedKey)
+        {
+            if (!nodeId.equals(senderNodeId))
+                received.add(encodedKey);
+            super.receive(senderNodeId, encodedKey);
+        }
+    }
+}
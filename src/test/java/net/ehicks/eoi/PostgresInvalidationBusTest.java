@@ -0,0 +1,70 @@
+package net.ehicks.eoi;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostgresInvalidationBusTest
+{
+    @Test
+    void smallInvalidationFitsOnePayload()
+    {
+        RecordingBus publisher = new RecordingBus();
+
+        List<String> payloads = publisher.getPayloads(Collections.singletonList("projects:1"));
+
+        assertEquals(Collections.singletonList(publisher.getNodeId() + "\nprojects:1"), payloads);
+    }
+
+    @Test
+    void largeInvalidationIsSplitAndReassembled()
+    {
+        RecordingBus publisher = new RecordingBus();
+        RecordingBus subscriber = new RecordingBus();
+        List<String> encodedKeys = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            encodedKeys.add("projects:" + (1_000_000 + i));
+
+        List<String> payloads = publisher.getPayloads(encodedKeys);
+        assertTrue(payloads.size() > 1);
+        for (String payload : payloads)
+        {
+            assertTrue(payload.getBytes(StandardCharsets.UTF_8).length <= PostgresInvalidationBus.MAX_PAYLOAD_BYTES);
+            assertTrue(payload.startsWith(publisher.getNodeId() + "\n"));
+            subscriber.handlePayload(payload);
+            publisher.handlePayload(payload);
+        }
+
+        assertEquals(encodedKeys, subscriber.received);
+        assertTrue(publisher.received.isEmpty());
+    }
+
+    @Test
+    void multiByteKeysAreMeasuredInBytes()
+    {
+        RecordingBus publisher = new RecordingBus();
+        List<String> encodedKeys = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+            encodedKeys.add("projects:\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9" + i);
+
+        for (String payload : publisher.getPayloads(encodedKeys))
+            assertTrue(payload.getBytes(StandardCharsets.UTF_8).length <= PostgresInvalidationBus.MAX_PAYLOAD_BYTES);
+    }
+
+    private static class RecordingBus extends PostgresInvalidationBus
+    {
+        private final List<String> received = new ArrayList<>();
+
+        @Override
+        public void receive(String senderNodeId, String encodedKey)
+        {
+            if (!nodeId.equals(senderNodeId))
+                received.add(encodedKey);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrometheusExporterTest
+{
+    private final MetricRegistry metricRegistry = Metrics.getMetricRegistry();
+
+    @AfterEach
+    void tearDown()
+    {
+        metricRegistry.removeMatching((name, metric) -> name.startsWith("eoi.test") || name.endsWith(".PromTest"));
+    }
+
+    private static List<String> scrape() throws IOException
+    {
+        StringWriter writer = new StringWriter();
+        PrometheusExporter.write(writer);
+        return Arrays.asList(writer.toString().split("\n"));
+    }
+
+    @Test
+    void countersAndGaugesAreWrittenWithTypes() throws IOException
+    {
+        metricRegistry.counter("eoi.testCounter").inc(3);
+        metricRegistry.register("eoi.testFlag", (Gauge<Boolean>) () -> true);
+        metricRegistry.register("eoi.testName", (Gauge<String>) () -> "not a number");
+
+        List<String> lines = scrape();
+        assertTrue(lines.contains("# TYPE eoi_test_counter_total counter"));
+        assertTrue(lines.contains("eoi_test_counter_total 3"));
+        assertTrue(lines.contains("# TYPE eoi_test_flag gauge"));
+        assertTrue(lines.contains("eoi_test_flag 1"));
+        assertFalse(lines.stream().anyMatch(line -> line.startsWith("eoi_test_name")));
+    }
+
+    @Test
+    void statementTimersBecomeLabelledSummariesInSeconds() throws IOException
+    {
+        String fingerprint = "select * from eoi_test where a = \"?\"";
+        Metrics.getBoundedTimer("eoi.query.execute." + fingerprint).update(2, TimeUnit.SECONDS);
+        metricRegistry.counter("eoi.hydration.rows.entity.PromTest").inc(5);
+
+        List<String> lines = scrape();
+        String labels = "fingerprint=\"select * from eoi_test where a = \\\"?\\\"\"";
+        assertTrue(lines.contains("# TYPE eoi_query_execute_seconds summary"));
+        assertTrue(lines.contains("eoi_query_execute_seconds{" + labels + ",quantile=\"0.5\"} 2"));
+        assertTrue(lines.contains("eoi_query_execute_seconds_count{" + labels + "} 1"));
+        assertTrue(lines.contains("eoi_hydration_rows_total{entity=\"PromTest\"} 5"));
+
+        metricRegistry.removeMatching((name, metric) -> name.startsWith("eoi.query.execute.select * from eoi_test"));
+        assertFalse(scrape().stream().anyMatch(line -> line.contains("from eoi_test")));
+    }
+
+    @Test
+    void namesAreMappedToFamiliesAndLabels()
+    {
+        assertArrayEquals(new String[]{"hikaricp_pool_wait", "pool=\"eoi-pool\""}, PrometheusExporter.getFamilyNameAndLabels("eoi-pool.pool.Wait"));
+        assertArrayEquals(new String[]{"eoi_named_query", "name=\"projectsByName\""}, PrometheusExporter.getFamilyNameAndLabels("eoi.namedQuery.projectsByName"));
+        assertArrayEquals(new String[]{"eoi_hydration_allocated_bytes", "fingerprint=\"other\""}, PrometheusExporter.getFamilyNameAndLabels("eoi.hydration.allocatedBytes.query.other"));
+        assertArrayEquals(new String[]{"eoi_query_cache_hit_ratio", ""}, PrometheusExporter.getFamilyNameAndLabels("eoi.queryCache.hitRatio"));
+        assertArrayEquals(new String[]{"_1st_metric", ""}, PrometheusExporter.getFamilyNameAndLabels("1st-metric"));
+    }
+}
@@ -0,0 +1,72 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCacheTest
+{
+    private static final String QUERY = "select * from projects where prefix like ?";
+
+    @BeforeEach
+    void enable()
+    {
+        TestDatabase.reset();
+        QueryCache.enabled = true;
+    }
+
+    @AfterEach
+    void disable()
+    {
+        QueryCache.enabled = false;
+    }
+
+    @Test
+    void repeatedQueryIsServedFromCache()
+    {
+        FindByIdTest.insertProject("alpha");
+
+        List<Project> first = EOI.executeCachedQuery(QUERY, Collections.singletonList("A%"));
+        long hits = QueryCache.hits.get();
+        List<Project> second = EOI.executeCachedQuery(QUERY, Collections.singletonList("A%"));
+
+        assertEquals(1, first.size());
+        assertEquals(first, second);
+        assertEquals(hits + 1, QueryCache.hits.get());
+    }
+
+    @Test
+    void writeToTableInvalidatesCachedResults()
+    {
+        FindByIdTest.insertProject("alpha");
+        assertEquals(1, EOI.executeCachedQuery(QUERY, Collections.singletonList("A%")).size());
+
+        FindByIdTest.insertProject("another");
+
+        assertEquals(2, EOI.executeCachedQuery(QUERY, Collections.singletonList("A%")).size());
+    }
+
+    @Test
+    void resultsReadBeforeAWriteAreNotCached()
+    {
+        String[] tables = QueryCache.getReferencedTables(QUERY);
+        long[] versions = QueryCache.getVersions(tables);
+        QueryCache.invalidateTable("projects");
+        QueryCache.put(QUERY, Collections.singletonList("A%"), tables, versions, Collections.emptyList());
+
+        assertNull(QueryCache.get(QUERY, Collections.singletonList("A%")));
+    }
+
+    @Test
+    void referencedTablesComeFromFromAndJoin()
+    {
+        String[] tables = QueryCache.getReferencedTables("select p.* from projects p join audits a on a.id = p.id where p.id in (select id from Issues);");
+        assertArrayEquals(new String[]{"projects", "audits", "issues"}, tables);
+    }
+}
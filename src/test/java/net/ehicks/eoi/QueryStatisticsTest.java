@@ -0,0 +1,103 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryStatisticsTest
+{
+    private int maxEntries;
+
+    @BeforeEach
+    void setUp()
+    {
+        maxEntries = QueryStatistics.maxEntries;
+        QueryStatistics.reset();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        QueryStatistics.maxEntries = maxEntries;
+        QueryStatistics.enabled = true;
+        QueryStatistics.reset();
+    }
+
+    private static QueryStatistics.Entry find(String fingerprint)
+    {
+        for (QueryStatistics.Entry entry : QueryStatistics.getSnapshot())
+            if (entry.fingerprint.equals(fingerprint))
+                return entry;
+        return null;
+    }
+
+    @Test
+    void recordsAreSummedPerFingerprint()
+    {
+        QueryStatistics.record("a", 3_000_000, 2);
+        QueryStatistics.record("a", 1_000_000, 5);
+        QueryStatistics.record("b", 10_000_000, 1);
+
+        QueryStatistics.Entry a = find("a");
+        assertEquals(2, a.calls);
+        assertEquals(4_000_000, a.totalNanos);
+        assertEquals(3_000_000, a.maxNanos);
+        assertEquals(7, a.rows);
+        assertEquals(2.0, a.getMeanMillis(), 0.0001);
+
+        List<QueryStatistics.Entry> top = QueryStatistics.getTop(1);
+        assertEquals(1, top.size());
+        assertEquals("b", top.get(0).fingerprint);
+    }
+
+    @Test
+    void fullTableDropsTheLeastCalled()
+    {
+        QueryStatistics.maxEntries = 3;
+        QueryStatistics.record("often", 1, 0);
+        QueryStatistics.record("often", 1, 0);
+        QueryStatistics.record("rare", 1, 0);
+        QueryStatistics.record("sometimes", 1, 0);
+        QueryStatistics.record("sometimes", 1, 0);
+
+        QueryStatistics.record("new", 1, 0);
+
+        assertEquals(3, QueryStatistics.getSnapshot().size());
+        assertNull(find("rare"));
+        assertNotNull(find("new"));
+    }
+
+    @Test
+    void disabledRecordsNothing()
+    {
+        QueryStatistics.enabled = false;
+        QueryStatistics.record("a", 1, 1);
+        QueryStatistics.recordCacheHit("select * from projects");
+
+        assertTrue(QueryStatistics.getSnapshot().isEmpty());
+    }
+
+    @Test
+    void queriesAndCacheHitsAreRecorded()
+    {
+        TestDatabase.reset();
+        long id = FindByIdTest.insertProject("alpha");
+        FindByIdTest.insertProject("beta");
+        QueryStatistics.reset();
+
+        List<Project> projects = EOI.executeQuery("select * from projects");
+        assertEquals(2, projects.size());
+        QueryStatistics.Entry select = find(SQLFingerprint.of("select * from projects"));
+        assertEquals(1, select.calls);
+        assertEquals(2, select.rows);
+
+        EOI.findById(Project.class, id);
+        DBMap dbMap = DBMap.getDBMapByClass(Project.class);
+        assertEquals(1, find(SQLFingerprint.of(dbMap.getSelectByIdStatement())).cacheHits);
+    }
+}
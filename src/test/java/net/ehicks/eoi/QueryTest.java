@@ -0,0 +1,85 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryTest
+{
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        for (String name : new String[]{"delta", "alpha", "charlie", "bravo"})
+            FindByIdTest.insertProject(name);
+    }
+
+    @Test
+    void conditionsOrderingAndPaging()
+    {
+        List<Project> projects = Query.from(Project.class)
+                .where("name", Query.Op.GT, "alpha")
+                .orderBy("name")
+                .limit(2)
+                .list();
+
+        assertEquals(Arrays.asList("bravo", "charlie"), getNames(projects));
+        assertEquals("delta", Query.from(Project.class).orderByDesc("name").first().getName());
+    }
+
+    @Test
+    void inAndCount()
+    {
+        Query<Project> query = Query.from(Project.class).in("name", Arrays.asList("alpha", "delta", "zulu"));
+
+        assertEquals(2, query.count());
+        assertEquals(2, query.list().size());
+        assertTrue(Query.from(Project.class).in("name", Collections.emptyList()).list().isEmpty());
+    }
+
+    @Test
+    void nullValuesBecomeIsNull()
+    {
+        assertEquals(4, Query.from(Project.class).isNull("inceptDate").count());
+        assertEquals(0, Query.from(Project.class).isNotNull("inceptDate").count());
+        assertEquals(4, Query.from(Project.class).where("name", Query.Op.NE, null).count());
+    }
+
+    @Test
+    void projectionReturnsRequestedFieldsInOrder()
+    {
+        List<List<Object>> rows = Query.from(Project.class).select("name", "prefix").eq("name", "bravo").list();
+
+        assertEquals(Collections.singletonList(Arrays.<Object>asList("bravo", "BRAVO")), rows);
+    }
+
+    @Test
+    void entitiesComeFromTheCacheUnlessBypassed()
+    {
+        Project cached = Query.from(Project.class).eq("name", "alpha").first();
+
+        assertSame(cached, Query.from(Project.class).eq("name", "alpha").first());
+        assertNotSame(cached, Query.from(Project.class).eq("name", "alpha").bypassCache().first());
+    }
+
+    @Test
+    void unknownFieldIsRejected()
+    {
+        assertThrows(IllegalArgumentException.class, () -> Query.from(Project.class).eq("missing", 1));
+    }
+
+    static List<String> getNames(List<Project> projects)
+    {
+        List<String> names = new ArrayList<>();
+        for (Project project : projects)
+            names.add(project.getName());
+        return names;
+    }
+}
@@ -0,0 +1,69 @@
+package net.ehicks.eoi;
+
+import com.codahale.metrics.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryTimingTest
+{
+    private int maxFingerprints;
+
+    @BeforeEach
+    void setUp()
+    {
+        maxFingerprints = Metrics.maxFingerprints;
+        QueryTiming.reset();
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        Metrics.maxFingerprints = maxFingerprints;
+        QueryTiming.reset();
+    }
+
+    @Test
+    void phasesAreRecordedPerFingerprint()
+    {
+        QueryTiming timing = QueryTiming.start("select * from projects where id = 1");
+        timing.mark(QueryTiming.Phase.ACQUIRE);
+        timing.mark(QueryTiming.Phase.EXECUTE);
+        QueryTiming.start("select * from projects where id = 2").mark(QueryTiming.Phase.EXECUTE);
+
+        assertEquals(timing.fingerprint, timing.metricFingerprint);
+        Timer execute = Metrics.getMetricRegistry().getTimers().get(QueryTiming.getMetricName(QueryTiming.Phase.EXECUTE, timing.fingerprint));
+        assertEquals(2, execute.getCount());
+        Timer hydrate = Metrics.getMetricRegistry().getTimers().get(QueryTiming.getMetricName(QueryTiming.Phase.HYDRATE, timing.fingerprint));
+        assertEquals(0, hydrate.getCount());
+    }
+
+    @Test
+    void statementsPastTheCapShareOther()
+    {
+        Metrics.maxFingerprints = 2;
+        assertNotEquals(QueryTiming.OTHER, QueryTiming.start("select * from projects").metricFingerprint);
+        assertNotEquals(QueryTiming.OTHER, QueryTiming.start("select * from issues").metricFingerprint);
+
+        QueryTiming third = QueryTiming.start("select * from audits");
+        assertEquals(QueryTiming.OTHER, third.metricFingerprint);
+        assertNotEquals(QueryTiming.OTHER, third.fingerprint);
+        assertNotEquals(QueryTiming.OTHER, QueryTiming.start("select * from projects").metricFingerprint);
+    }
+
+    @Test
+    void timersKeepABoundedSample()
+    {
+        QueryTiming timing = QueryTiming.start("select * from projects");
+        Timer execute = Metrics.getMetricRegistry().getTimers().get(QueryTiming.getMetricName(QueryTiming.Phase.EXECUTE, timing.fingerprint));
+        for (int i = 0; i < Metrics.reservoirSize * 4; i++)
+            execute.update(i, TimeUnit.NANOSECONDS);
+
+        assertEquals(Metrics.reservoirSize * 4, execute.getCount());
+        assertEquals(Metrics.reservoirSize, execute.getSnapshot().size());
+    }
+}
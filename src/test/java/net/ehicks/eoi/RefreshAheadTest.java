@@ -0,0 +1,124 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefreshAheadTest
+{
+    private DBMap dbMap;
+
+    @BeforeEach
+    void enable()
+    {
+        TestDatabase.reset();
+        dbMap = DBMap.getDBMapByClass(Project.class);
+        dbMap.getCacheRegion().ttlMillis = 60_000;
+        RefreshAhead.enabled = true;
+        RefreshAhead.refreshWindow = 1.0;
+        RefreshAhead.hotThreshold = 2;
+        RefreshAhead.flushMillis = 10;
+    }
+
+    @AfterEach
+    void disable()
+    {
+        RefreshAhead.shutdown();
+        RefreshAhead.enabled = false;
+        RefreshAhead.refreshWindow = 0.2;
+        RefreshAhead.hotThreshold = 5;
+        RefreshAhead.flushMillis = 50;
+        dbMap.getCacheRegion().applyPolicy(Project.class.getAnnotation(CachePolicy.class));
+    }
+
+    @Test
+    void hotEntryIsReloadedInTheBackground() throws InterruptedException
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        Project cached = EOI.findById(Project.class, id);
+        EOI.executeUpdate("update projects set name = 'renamed' where id = " + id);
+
+        for (int i = 0; i < 3; i++)
+            EOI.findById(Project.class, id);
+
+        awaitTrue(() -> "renamed".equals(((Project) EOICache.get(CacheKey.of(dbMap, id))).getName()));
+        assertNotSame(cached, EOI.findById(Project.class, id));
+    }
+
+    @Test
+    void deletedRowIsEvicted() throws InterruptedException
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        EOI.findById(Project.class, id);
+        EOI.executeUpdate("delete from projects where id = " + id);
+
+        for (int i = 0; i < 3; i++)
+            EOI.findById(Project.class, id);
+
+        awaitTrue(() -> !dbMap.getCacheRegion().containsKey(CacheKey.of(dbMap, id)));
+    }
+
+    @Test
+    void slowRefreshIsLoadedOnce() throws Exception
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        EOI.findById(Project.class, id);
+        QueryStatistics.reset();
+        long refreshed = Metrics.getMetricRegistry().counter("eoi.refreshAhead.refreshed").getCount();
+
+        // with every pooled connection taken the refresh waits for one, across many flush ticks
+        List<Connection> held = new ArrayList<>();
+        try
+        {
+            for (int i = 0; i < EOI.cp.getMaximumPoolSize(); i++)
+                held.add(EOI.cp.getConnection());
+            for (int i = 0; i < 3; i++)
+                EOI.findById(Project.class, id);
+            Thread.sleep(20 * RefreshAhead.flushMillis);
+        }
+        finally
+        {
+            for (Connection connection : held)
+                connection.close();
+        }
+
+        awaitTrue(() -> Metrics.getMetricRegistry().counter("eoi.refreshAhead.refreshed").getCount() > refreshed);
+        Thread.sleep(10 * RefreshAhead.flushMillis);
+
+        assertEquals(refreshed + 1, Metrics.getMetricRegistry().counter("eoi.refreshAhead.refreshed").getCount());
+        String fingerprint = SQLFingerprint.of(SQLGenerator.getSelectByIdsStatement(dbMap, 1));
+        for (QueryStatistics.Entry entry : QueryStatistics.getSnapshot())
+            if (entry.fingerprint.equals(fingerprint))
+                assertEquals(1, entry.calls);
+    }
+
+    @Test
+    void coldEntryIsLeftAlone() throws InterruptedException
+    {
+        long id = FindByIdTest.insertProject("alpha");
+        Project cached = EOI.findById(Project.class, id);
+        EOI.executeUpdate("update projects set name = 'renamed' where id = " + id);
+
+        Thread.sleep(100);
+
+        assertSame(cached, EOI.findById(Project.class, id));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package net.ehicks.eoi;
+
+import net.ehicks.eoi.diagnostic.Project;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionCompletenessTest
+{
+    private CacheRegion region;
+
+    @BeforeEach
+    void setUp()
+    {
+        TestDatabase.reset();
+        region = DBMap.getDBMapByClass(Project.class).getCacheRegion();
+        FindByIdTest.insertProject("alpha");
+    }
+
+    @AfterEach
+    void endTransaction()
+    {
+        if (EOI.isInTransaction())
+            EOI.rollback();
+    }
+
+    @Test
+    void commitClearsCompletenessRegainedDuringTheTransaction() throws Exception
+    {
+        EOI.startTransaction();
+        FindByIdTest.insertProject("beta");
+
+        // another connection can't see the uncommitted row and completes the region without it
+        CompletableFuture.runAsync(() -> CachePreloader.preload(DBMap.getDBMapByClass(Project.class))).get();
+        assertTrue(region.isComplete());
+
+        EOI.commit();
+
+        assertFalse(region.isComplete());
+    }
+
+    @Test
+    void unparsedStatementClearsEveryRegion() throws Exception
+    {
+        String statement = "UPDATE projects set name = 'renamed'";
+        assertEquals("", SQLQuery.parseSQL(statement).tableName);
+
+        CachePreloader.preload(DBMap.getDBMapByClass(Project.class));
+        EOI.executeUpdate(statement);
+        assertFalse(region.isComplete());
+
+        EOI.startTransaction();
+        EOI.executeUpdate(statement);
+        CompletableFuture.runAsync(() -> CachePreloader.preload(DBMap.getDBMapByClass(Project.class))).get();
+        EOI.commit();
+
+        assertFalse(region.isComplete());
+    }
+
+    @Test
+    void unknownIndexFieldIsRejected()
+    {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> EOI.findByIndex(Project.class, "nmae", "alpha"));
+        assertTrue(e.getMessage().contains("nmae"));
+        assertThrows(IllegalArgumentException.class, () -> EOI.findByIndexRange(Project.class, "nmae", "a", "b"));
+    }
+}
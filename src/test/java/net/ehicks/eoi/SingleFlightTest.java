@@ -0,0 +1,112 @@
+package net.ehicks.eoi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown()
+    {
+        executor.shutdownNow();
+        QueryCache.enabled = false;
+    }
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception
+    {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        Future<String> leader = executor.submit(() -> SingleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "value";
+        }));
+        loading.await();
+
+        long coalesced = SingleFlight.getCoalescedCount();
+        List<Future<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            followers.add(executor.submit(() -> SingleFlight.execute("key", () -> {
+                loads.incrementAndGet();
+                return "other";
+            })));
+        while (SingleFlight.getCoalescedCount() < coalesced + 4)
+            Thread.sleep(5);
+        release.countDown();
+
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+        for (Future<String> follower : followers)
+            assertEquals("value", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(0, SingleFlight.getInFlightCount());
+    }
+
+    @Test
+    void failureReachesEveryWaiter() throws Exception
+    {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = executor.submit(() -> SingleFlight.execute("failing", () -> {
+            loading.countDown();
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        loading.await();
+
+        long coalesced = SingleFlight.getCoalescedCount();
+        Future<String> follower = executor.submit(() -> SingleFlight.execute("failing", () -> "other"));
+        while (SingleFlight.getCoalescedCount() < coalesced + 1)
+            Thread.sleep(5);
+        release.countDown();
+
+        assertTrue(assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+        assertTrue(assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS)).getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void reentrantLoadOfTheSameKeyRunsDirectly()
+    {
+        String result = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> SingleFlight.execute("outer", () -> SingleFlight.execute("outer", () -> "inner")));
+        assertEquals("inner", result);
+    }
+
+    @Test
+    void cachedQueryDoesNotWaitOnItself()
+    {
+        TestDatabase.reset();
+        QueryCache.enabled = true;
+        FindByIdTest.insertProject("alpha");
+
+        List<Object> projects = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> EOI.executeCachedQuery("select * from projects"));
+        assertEquals(1, projects.size());
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
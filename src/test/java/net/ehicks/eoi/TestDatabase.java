@@ -0,0 +1,64 @@
+package net.ehicks.eoi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * One in-memory H2 database with the diagnostic and test entities, shared by every test class in the JVM.
+ */
+class TestDatabase
+{
+    static final AuditUser AUDIT_USER = new AuditUser()
+    {
+        @Override
+        public String getId()
+        {
+            return "test";
+        }
+
+        @Override
+        public String getIpAddress()
+        {
+            return "";
+        }
+    };
+
+    private static boolean started;
+
+    static synchronized void start()
+    {
+        if (started)
+            return;
+
+        try
+        {
+            EOI.init(new ConnectionInfo(ConnectionInfo.DbMode.H2_MEM.toString(), "", "", "eoi_test", "", "", "2097152", "", ""));
+            DBMap.loadDbMaps(new File("src/main/java/net/ehicks/eoi/diagnostic").getCanonicalPath(), "net.ehicks.eoi.diagnostic");
+            DBMap.loadDbMaps(new File("src/test/java/net/ehicks/eoi/beans").getCanonicalPath(), "net.ehicks.eoi.beans");
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        for (DBMap dbMap : DBMap.dbMaps)
+            EOI.executeUpdate(SQLGenerator.getCreateTableStatement(dbMap));
+        started = true;
+    }
+
+    /**
+     * Empties every table and cache and turns the entity cache on.
+     */
+    static void reset()
+    {
+        start();
+        if (EOI.isInTransaction())
+            EOI.rollback();
+        for (DBMap dbMap : DBMap.dbMaps)
+            EOI.executeUpdate("delete from " + dbMap.tableName);
+        EOICache.clear();
+        QueryCache.clear();
+        EOI.enableCache = true;
+    }
+}
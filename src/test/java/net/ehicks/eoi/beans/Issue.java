@@ -0,0 +1,76 @@
+package net.ehicks.eoi.beans;
+
+import net.ehicks.eoi.CacheIndexed;
+import net.ehicks.eoi.References;
+import net.ehicks.eoi.diagnostic.Project;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+@Entity
+@Table(name = "issues")
+public class Issue implements Serializable
+{
+    @Id
+    @Column(name = "id", updatable = false, nullable = false, columnDefinition = "bigint not null auto_increment primary key")
+    private Long id;
+
+    @CacheIndexed
+    @References(Project.class)
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Column(name = "title", nullable = false)
+    private String title = "";
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof Issue)) return false;
+        Issue that = (Issue) obj;
+        return this.id.equals(that.getId());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 17 * 37 * id.intValue();
+    }
+
+    public String toString()
+    {
+        return this.getClass().getSimpleName() + ":" + id;
+    }
+
+    // -------- Getters / Setters ----------
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    public Long getProjectId()
+    {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId)
+    {
+        this.projectId = projectId;
+    }
+
+    public String getTitle()
+    {
+        return title;
+    }
+
+    public void setTitle(String title)
+    {
+        this.title = title;
+    }
+}